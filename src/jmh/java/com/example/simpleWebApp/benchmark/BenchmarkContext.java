@@ -0,0 +1,24 @@
+package com.example.simpleWebApp.benchmark;
+
+import com.example.simpleWebApp.SimpleWebAppApplication;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+// Boots the application without a web server for benchmarks that need real beans on a real H2 instance
+public final class BenchmarkContext {
+
+    private BenchmarkContext() {
+    }
+
+    // Arguments use the --name=value form so they win over application.properties
+    public static ConfigurableApplicationContext start(String... args) {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        return new SpringApplicationBuilder(SimpleWebAppApplication.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .properties("logging.level.root=WARN")
+                .run(args);
+    }
+}
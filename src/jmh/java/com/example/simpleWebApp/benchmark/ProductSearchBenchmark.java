@@ -0,0 +1,62 @@
+package com.example.simpleWebApp.benchmark;
+
+import com.example.simpleWebApp.model.GenericResponse;
+import com.example.simpleWebApp.model.ProductSummary;
+import com.example.simpleWebApp.service.ProductService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Search over 1M rows. SampleTime reports the p95/p99 per query shape, the indexed ones should stay under 10 ms.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductSearchBenchmark {
+
+    private static final int PRODUCTS = 1_000_000;
+
+    private ConfigurableApplicationContext context;
+    private ProductService productService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start(
+                "--spring.datasource.url=jdbc:h2:mem:search-benchmark;DB_CLOSE_ON_EXIT=FALSE");
+        productService = context.getBean(ProductService.class);
+        // one INSERT ... SELECT is far quicker to seed a million rows than going through JPA
+        context.getBean(JdbcTemplate.class).update(
+                "insert into product (id, name, description, price, version) " +
+                        "select x, 'Product ' || x, 'Description of product ' || x || case when mod(x, 100) = 0 then ' waterproof' else '' end, " +
+                        "mod(x * 7919, 100000) / 100.0, 0 from system_range(1, ?)", PRODUCTS);
+        context.getBean(JdbcTemplate.class).execute("analyze");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public GenericResponse<List<ProductSummary>> namePrefix() {
+        return productService.searchProducts("Product " + ThreadLocalRandom.current().nextInt(1, 1000), null, null, null, "name", 50);
+    }
+
+    @Benchmark
+    public GenericResponse<List<ProductSummary>> priceRange() {
+        double min = ThreadLocalRandom.current().nextInt(0, 990);
+        return productService.searchProducts(null, null, min, min + 1, "price,desc", 50);
+    }
+
+    @Benchmark
+    public GenericResponse<List<ProductSummary>> keywordInPriceRange() {
+        double min = ThreadLocalRandom.current().nextInt(0, 900);
+        return productService.searchProducts(null, "waterproof", min, min + 10, "price", 50);
+    }
+}
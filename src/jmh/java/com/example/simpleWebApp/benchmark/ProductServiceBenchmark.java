@@ -0,0 +1,91 @@
+package com.example.simpleWebApp.benchmark;
+
+import com.example.simpleWebApp.model.GenericResponse;
+import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.repository.ProductRepository;
+import com.example.simpleWebApp.service.ProductBatchService;
+import com.example.simpleWebApp.service.ProductService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// ProductService against a real in-memory H2 database. The by-id read is measured through the
+// product cache and straight against the repository, which is what every cache miss costs.
+// getMissingProductById is the scraper case, an id that does not exist. With -prof gc the unproxied variant shows the
+// service allocates nothing for it; what the proxied one allocates is the @Timed timer sample.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductServiceBenchmark {
+
+    private static final int PRODUCTS = 10_000;
+
+    private ConfigurableApplicationContext context;
+    private ProductService productService;
+    private ProductService unproxiedProductService;
+    private ProductRepository productRepository;
+    private long firstId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start(
+                "--spring.datasource.url=jdbc:h2:mem:service-benchmark;DB_CLOSE_ON_EXIT=FALSE",
+                "--products.cache.maximum-size=" + PRODUCTS);
+        productService = context.getBean(ProductService.class);
+        unproxiedProductService = (ProductService) AopProxyUtils.getSingletonTarget(productService);
+        productRepository = context.getBean(ProductRepository.class);
+
+        List<Product> products = new ArrayList<>(PRODUCTS);
+        for (int i = 0; i < PRODUCTS; i++) {
+            products.add(product(i));
+        }
+        firstId = context.getBean(ProductBatchService.class).createProducts(products).getData().get(0).getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public GenericResponse<Product> getProductById() {
+        return productService.getProductById(firstId + ThreadLocalRandom.current().nextInt(PRODUCTS));
+    }
+
+    @Benchmark
+    public GenericResponse<Product> getMissingProductById() {
+        return productService.getProductById(-1L - ThreadLocalRandom.current().nextInt(100));
+    }
+
+    @Benchmark
+    public GenericResponse<Product> getMissingProductByIdUnproxied() {
+        return unproxiedProductService.getProductById(-1L - ThreadLocalRandom.current().nextInt(100));
+    }
+
+    @Benchmark
+    public Optional<Product> findProductById() {
+        return productRepository.findById(firstId + ThreadLocalRandom.current().nextInt(PRODUCTS));
+    }
+
+    @Benchmark
+    public GenericResponse<Product> createProduct() {
+        return productService.createProduct(product(ThreadLocalRandom.current().nextInt()));
+    }
+
+    private static Product product(int i) {
+        Product product = new Product();
+        product.setName("Benchmark Product " + i);
+        product.setDescription("Benchmark Description " + i);
+        product.setPrice(i);
+        return product;
+    }
+}
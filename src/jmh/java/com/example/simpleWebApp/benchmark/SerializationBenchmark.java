@@ -0,0 +1,71 @@
+package com.example.simpleWebApp.benchmark;
+
+import com.example.simpleWebApp.model.GenericResponse;
+import com.example.simpleWebApp.model.Product;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Jackson serialization of the list response in each format the controller negotiates,
+// configured the way Spring Boot configures its ObjectMapper. Setup prints the encoded size.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private static final TypeReference<GenericResponse<List<Product>>> LIST_RESPONSE = new TypeReference<>() {
+    };
+
+    @Param({"1", "100", "10000"})
+    public int size;
+
+    @Param({"json", "smile", "cbor"})
+    public String format;
+
+    private ObjectMapper objectMapper;
+    private GenericResponse<List<Product>> response;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = switch (format) {
+            case "smile" -> Jackson2ObjectMapperBuilder.json().factory(new SmileFactory()).build();
+            case "cbor" -> Jackson2ObjectMapperBuilder.json().factory(new CBORFactory()).build();
+            default -> Jackson2ObjectMapperBuilder.json().build();
+        };
+        List<Product> products = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Product product = new Product();
+            product.setId((long) i);
+            product.setName("Product " + i);
+            product.setDescription("Description of product " + i);
+            product.setPrice(i * 1.5);
+            product.setVersion(0L);
+            products.add(product);
+        }
+        response = new GenericResponse<>(products);
+        encoded = objectMapper.writeValueAsBytes(response);
+        System.out.printf("%n%s, %d products: %d bytes%n", format, size, encoded.length);
+    }
+
+    @Benchmark
+    public byte[] serializeListResponse() throws IOException {
+        return objectMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public GenericResponse<List<Product>> deserializeListResponse() throws IOException {
+        return objectMapper.readValue(encoded, LIST_RESPONSE);
+    }
+}
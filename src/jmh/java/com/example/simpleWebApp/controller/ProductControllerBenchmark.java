@@ -0,0 +1,41 @@
+package com.example.simpleWebApp.controller;
+
+import com.example.simpleWebApp.enums.ErrorCode;
+import com.example.simpleWebApp.model.GenericResponse;
+import com.example.simpleWebApp.model.Product;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.TimeUnit;
+
+// ProductController.buildResponse for the success and error branches; lives in the controller package to reach it
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductControllerBenchmark {
+
+    private GenericResponse<Product> found;
+    private GenericResponse<Product> notFound;
+
+    @Setup
+    public void setUp() {
+        Product product = new Product();
+        product.setId(1L);
+        product.setName("Product");
+        found = new GenericResponse<>(product);
+        notFound = new GenericResponse<>("Product not found", ErrorCode.PRODUCT_NOT_FOUND);
+    }
+
+    @Benchmark
+    public ResponseEntity<GenericResponse<Product>> buildFoundResponse() {
+        return ProductController.buildResponse(found);
+    }
+
+    @Benchmark
+    public ResponseEntity<GenericResponse<Product>> buildNotFoundResponse() {
+        return ProductController.buildResponse(notFound);
+    }
+}
@@ -1,9 +1,14 @@
 package com.example.simpleWebApp;
 
+import com.example.simpleWebApp.config.ProductRuntimeHints;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.scheduling.annotation.EnableAsync;
 
 @SpringBootApplication
+@EnableAsync
+@ImportRuntimeHints(ProductRuntimeHints.class)
 public class  SimpleWebAppApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,150 @@
+package com.example.simpleWebApp.cache;
+
+import com.example.simpleWebApp.model.Product;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// In-process read-through cache of products keyed by id.
+// Caffeine bounds it by size (W-TinyLFU admission/eviction) and by time since the last write.
+// A miss is loaded outside the map, like a SingleFlight: concurrent misses for one id share one query and its
+// result or exception, and no map lock is held while the database answers. A write to an id detaches the load of
+// that id in flight and marks it stale before it touches the map, so a read that starts after the write never
+// joins a load from before it, and that load does not store the row it read. Writes to other ids leave the load
+// alone, a hot id is loaded once per burst however busy the rest of the table is.
+// Values are the loader's Optionals, so ids with no row are cached too, as the shared Optional.empty()
+// with a shorter lifetime. Repeated lookups of ids that do not exist neither reach the database nor allocate.
+@Component
+public class ProductCache {
+
+    private final Cache<Long, Optional<Product>> cache;
+    // the load in flight per id, only while it runs
+    private final ConcurrentMap<Long, Load> loads = new ConcurrentHashMap<>();
+
+    // Bumped by every write that goes through the cache, so list views can tell they changed without a query.
+    // Loads by id do not look at it.
+    // The start time keeps versions from two runs of the application apart.
+    private final long startedAt = System.currentTimeMillis();
+    private final AtomicLong generation = new AtomicLong();
+
+    @Autowired
+    public ProductCache(@Value("${products.cache.maximum-size:10000}") long maximumSize,
+                        @Value("${products.cache.expire-after-write:10m}") Duration expireAfterWrite,
+                        @Value("${products.cache.absent-expire-after-write:30s}") Duration absentExpireAfterWrite) {
+        long productNanos = expireAfterWrite.toNanos();
+        long absentNanos = Math.min(absentExpireAfterWrite.toNanos(), productNanos);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<Long, Optional<Product>>() {
+                    // expire after write, like expireAfterWrite, with the lifetime picked per entry
+                    @Override
+                    public long expireAfterCreate(Long id, Optional<Product> product, long currentTime) {
+                        return product.isEmpty() ? absentNanos : productNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Long id, Optional<Product> product, long currentTime, long currentDuration) {
+                        return expireAfterCreate(id, product, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Long id, Optional<Product> product, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    // Returns the cached product, or runs the loader once for this id and caches what it found, also nothing.
+    // A hit allocates nothing, the loader is only wrapped on a miss.
+    public Optional<Product> get(Long id, Function<Long, Optional<Product>> loader) {
+        Optional<Product> cached = cache.getIfPresent(id);
+        if (cached != null) {
+            return cached;
+        }
+        Load mine = new Load();
+        Load running = loads.putIfAbsent(id, mine);
+        if (running != null) {
+            return SingleFlight.join(running.result);
+        }
+        try {
+            Optional<Product> product = loader.apply(id);
+            // a write to this id since the load started may have made the row stale, the next read loads it again
+            cache.asMap().compute(id, (key, current) -> mine.stale ? current : product);
+            mine.result.complete(product);
+            return product;
+        } catch (RuntimeException | Error e) {
+            mine.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(id, mine);
+        }
+    }
+
+    public void put(Product product) {
+        written(product.getId());
+        cache.put(product.getId(), Optional.of(product));
+    }
+
+    public void invalidate(Long id) {
+        written(id);
+        cache.invalidate(id);
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        loads.keySet().forEach(this::detach);
+        cache.invalidateAll();
+    }
+
+    // For writes that reach the database without going through this cache, any of them may have filled a missing id
+    public void markChanged() {
+        generation.incrementAndGet();
+        loads.keySet().forEach(this::detach);
+        cache.asMap().values().removeIf(Optional::isEmpty);
+    }
+
+    public String listVersion() {
+        return startedAt + "-" + generation.get();
+    }
+
+    private void written(Long id) {
+        generation.incrementAndGet();
+        detach(id);
+    }
+
+    private void detach(Long id) {
+        Load load = loads.remove(id);
+        if (load != null) {
+            load.stale = true;
+        }
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long estimatedSize() {
+        return cache.estimatedSize();
+    }
+
+    // One load by id: everyone who missed while it runs waits for its result
+    private static final class Load {
+        final CompletableFuture<Optional<Product>> result = new CompletableFuture<>();
+        // set by a write to the id, the row this load reads may be older than that write
+        volatile boolean stale;
+    }
+}
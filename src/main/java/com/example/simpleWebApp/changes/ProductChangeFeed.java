@@ -0,0 +1,255 @@
+package com.example.simpleWebApp.changes;
+
+import com.example.simpleWebApp.enums.ChangeType;
+import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.model.ProductChange;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// In-process feed of product writes. Writers claim the next offset and store the change in a ring buffer, that is
+// all they do: they never wait for a subscriber. Every subscriber has its own virtual thread that reads the ring from
+// its own offset and writes to its connection, so a slow client only holds up itself. The ring is every
+// subscriber's buffer: one that falls more than the ring size behind finds its next entry overwritten, gets a RESET
+// event and is disconnected. Offsets start over when the application restarts, so a position is the offset together
+// with the run's epoch, "<epoch>-<offset>"; a client resuming with a position from another run gets a RESET as well,
+// whether its offset is above this run's head or not.
+@Component
+public class ProductChangeFeed implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductChangeFeed.class);
+
+    // start time of this run, tells positions from two runs of the application apart
+    private final long epoch = System.currentTimeMillis();
+    private final String positionPrefix = epoch + "-";
+    private final AtomicReferenceArray<ProductChange> ring;
+    private final int mask;
+    // last offset handed out; offsets start at 1
+    private final AtomicLong head = new AtomicLong();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${products.changes.heartbeat:15s}")
+    private Duration heartbeat;
+
+    @Value("${products.changes.timeout:30m}")
+    private Duration timeout;
+
+    private Counter dropped;
+    private volatile boolean running;
+
+    @Autowired
+    public ProductChangeFeed(@Value("${products.changes.buffer-size:4096}") int bufferSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, bufferSize - 1)) << 1;
+        this.ring = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    @Autowired
+    void registerMetrics(MeterRegistry meterRegistry) {
+        dropped = Counter.builder("product.changes.dropped")
+                .description("Subscribers disconnected for falling behind the change feed")
+                .register(meterRegistry);
+        Gauge.builder("product.changes.subscribers", subscribers, Set::size)
+                .description("Connected change feed subscribers")
+                .register(meterRegistry);
+    }
+
+    public void publish(ChangeType type, Long id, Product product) {
+        long offset = head.incrementAndGet();
+        ring.set(index(offset), new ProductChange(epoch, offset, type, id, product == null ? null : snapshot(product), System.currentTimeMillis()));
+        for (Subscriber subscriber : subscribers) {
+            LockSupport.unpark(subscriber.thread);
+        }
+    }
+
+    // after is the last position the client has seen, null for only what happens from now on
+    public SseEmitter subscribeEvents(String after) {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        start(new Subscriber(emitter, true, after));
+        return emitter;
+    }
+
+    public ResponseBodyEmitter subscribeLines(String after) {
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(timeout.toMillis());
+        start(new Subscriber(emitter, false, after));
+        return emitter;
+    }
+
+    public long head() {
+        return head.get();
+    }
+
+    // Position of the last change published, a subscriber passing it sees only what happens from now on
+    public String position() {
+        return positionPrefix + head.get();
+    }
+
+    // The offset in this run of a position, or -1 for one from another run or not a position at all
+    private long offsetOf(String position) {
+        if (!position.startsWith(positionPrefix)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(position, positionPrefix.length(), position.length(), 10);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private int index(long offset) {
+        return (int) (offset & mask);
+    }
+
+    private void start(Subscriber subscriber) {
+        ResponseBodyEmitter emitter = subscriber.emitter;
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(e -> subscriber.close());
+        subscriber.thread = Thread.ofVirtual().name("product-changes").unstarted(subscriber);
+        subscribers.add(subscriber);
+        subscriber.thread.start();
+    }
+
+    private static Product snapshot(Product product) {
+        Product copy = new Product();
+        copy.setId(product.getId());
+        copy.setName(product.getName());
+        copy.setDescription(product.getDescription());
+        copy.setPrice(product.getPrice());
+        copy.setVersion(product.getVersion());
+        return copy;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+            subscriber.close();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private class Subscriber implements Runnable {
+
+        private final ResponseBodyEmitter emitter;
+        private final boolean events;
+        private final String after;
+        private volatile Thread thread;
+        private volatile boolean closed;
+
+        Subscriber(ResponseBodyEmitter emitter, boolean events, String after) {
+            this.emitter = emitter;
+            this.events = events;
+            this.after = after;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long last = head.get();
+                if (after != null) {
+                    long offset = offsetOf(after);
+                    // resumable only from this run, and while everything after the client's offset is still in the ring
+                    if (offset < 0 || offset > last || last - offset > mask) {
+                        send(new ProductChange(epoch, last, ChangeType.RESET, null, null, System.currentTimeMillis()));
+                    } else {
+                        last = offset;
+                    }
+                }
+                // commits the response, otherwise the client would not see the stream open until the first change
+                sendHeartbeat();
+                long lastSent = System.nanoTime();
+                while (!closed) {
+                    long next = last + 1;
+                    ProductChange change = ring.get(index(next));
+                    if (change != null && change.getOffset() == next) {
+                        send(change);
+                        last = next;
+                        lastSent = System.nanoTime();
+                    } else if (change != null && change.getOffset() > next) {
+                        // lapped by the writers, the changes it has not seen are gone
+                        send(new ProductChange(epoch, head.get(), ChangeType.RESET, null, null, System.currentTimeMillis()));
+                        dropped.increment();
+                        emitter.complete();
+                        return;
+                    } else {
+                        // nothing published at next yet (or a writer is between claiming it and storing it)
+                        long idle = System.nanoTime() - lastSent;
+                        if (idle >= heartbeat.toNanos()) {
+                            sendHeartbeat();
+                            lastSent = System.nanoTime();
+                        } else {
+                            // publish unparks every subscriber, a publish before the park leaves a permit
+                            LockSupport.parkNanos(this, heartbeat.toNanos() - idle);
+                        }
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                // the client went away, or the emitter was completed by a timeout or shutdown
+                log.debug("Change feed subscriber closed", e);
+            } finally {
+                close();
+            }
+        }
+
+        private void send(ProductChange change) throws IOException {
+            if (events) {
+                ((SseEmitter) emitter).send(SseEmitter.event()
+                        .id(change.getEpoch() + "-" + change.getOffset())
+                        .name(change.getType().name())
+                        .data(change, MediaType.APPLICATION_JSON));
+            } else {
+                emitter.send(objectMapper.writeValueAsString(change) + "\n", MediaType.APPLICATION_NDJSON);
+            }
+        }
+
+        // keeps proxies from closing an idle connection and finds clients that are gone
+        private void sendHeartbeat() throws IOException {
+            if (events) {
+                ((SseEmitter) emitter).send(SseEmitter.event().comment("heartbeat"));
+            } else {
+                emitter.send("\n", MediaType.APPLICATION_NDJSON);
+            }
+        }
+
+        void close() {
+            closed = true;
+            subscribers.remove(this);
+            Thread current = thread;
+            if (current != null && current != Thread.currentThread()) {
+                LockSupport.unpark(current);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.simpleWebApp.config;
+
+import com.example.simpleWebApp.metrics.ErrorMetrics;
+import com.example.simpleWebApp.ratelimit.ClientRateLimiter;
+import com.example.simpleWebApp.ratelimit.ConcurrencyLimiter;
+import com.example.simpleWebApp.ratelimit.LoadSheddingFilter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import java.time.Duration;
+import java.util.Set;
+
+// Rate limiting and load shedding for /api/*; actuator and the home page are never shed.
+// Registered here rather than as a @Component so @WebMvcTest slices keep testing the controllers alone.
+@Configuration
+public class LoadSheddingConfig {
+
+    @Value("${products.rate-limit.enabled:false}")
+    private boolean rateLimitEnabled;
+
+    @Value("${products.rate-limit.requests-per-second:200}")
+    private double requestsPerSecond;
+
+    @Value("${products.rate-limit.burst:400}")
+    private int burst;
+
+    @Value("${products.rate-limit.max-clients:100000}")
+    private long maxClients;
+
+    @Value("${products.rate-limit.api-keys:}")
+    private Set<String> apiKeys;
+
+    @Value("${products.load-shedding.enabled:true}")
+    private boolean loadSheddingEnabled;
+
+    @Value("${products.load-shedding.initial-limit:200}")
+    private int initialLimit;
+
+    @Value("${products.load-shedding.min-limit:20}")
+    private int minLimit;
+
+    @Value("${products.load-shedding.max-limit:1000}")
+    private int maxLimit;
+
+    @Value("${products.load-shedding.target-latency:500ms}")
+    private Duration targetLatency;
+
+    @Value("${products.load-shedding.backoff-ratio:0.9}")
+    private double backoffRatio;
+
+    @Bean
+    public FilterRegistrationBean<LoadSheddingFilter> loadSheddingFilter(ErrorMetrics errorMetrics, ObjectMapper objectMapper,
+                                                                         MeterRegistry meterRegistry) {
+        ClientRateLimiter rateLimiter = null;
+        if (rateLimitEnabled) {
+            rateLimiter = new ClientRateLimiter(requestsPerSecond, burst, maxClients, System::nanoTime);
+            Gauge.builder("product.rate-limit.clients", rateLimiter, ClientRateLimiter::trackedClients)
+                    .description("Clients with a token bucket")
+                    .register(meterRegistry);
+        }
+        ConcurrencyLimiter concurrencyLimiter = null;
+        if (loadSheddingEnabled) {
+            concurrencyLimiter = new ConcurrencyLimiter(initialLimit, minLimit, maxLimit, targetLatency.toNanos(), backoffRatio,
+                    System::nanoTime);
+            Gauge.builder("product.concurrency.limit", concurrencyLimiter, ConcurrencyLimiter::getLimit)
+                    .description("Current adaptive limit on requests in flight")
+                    .register(meterRegistry);
+            Gauge.builder("product.concurrency.in-flight", concurrencyLimiter, ConcurrencyLimiter::getInFlight)
+                    .description("Requests in flight under the concurrency limit")
+                    .register(meterRegistry);
+        }
+        FilterRegistrationBean<LoadSheddingFilter> registration = new FilterRegistrationBean<>(
+                new LoadSheddingFilter(rateLimiter, apiKeys, concurrencyLimiter, errorMetrics, objectMapper, meterRegistry));
+        registration.addUrlPatterns("/api/*");
+        // right after the observation filter, so shed requests still show up in http.server.requests
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.simpleWebApp.config;
+
+import com.example.simpleWebApp.enums.ChangeType;
+import com.example.simpleWebApp.enums.ErrorCode;
+import com.example.simpleWebApp.model.BatchItemResult;
+import com.example.simpleWebApp.model.GenericResponse;
+import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.model.ProductCacheStats;
+import com.example.simpleWebApp.model.ProductChange;
+import com.example.simpleWebApp.model.ProductImportResult;
+import com.example.simpleWebApp.model.ProductPage;
+import com.example.simpleWebApp.model.ProductPrice;
+import com.example.simpleWebApp.model.ProductSummary;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+
+// What a native image cannot find out by itself, on top of what Spring AOT infers from the controllers.
+// H2's, Hibernate's and Caffeine's own internals come from the GraalVM reachability metadata the native profile enables.
+public class ProductRuntimeHints implements RuntimeHintsRegistrar {
+
+    private final BindingReflectionHintsRegistrar bindingHints = new BindingReflectionHintsRegistrar();
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        // Jackson reads and writes these through their constructors, getters and setters, also inside GenericResponse<T>
+        bindingHints.registerReflectionHints(hints.reflection(), Product.class, GenericResponse.class, ErrorCode.class,
+                ProductPage.class, ProductSummary.class, BatchItemResult.class, ProductCacheStats.class, ProductPrice.class,
+                ProductChange.class, ChangeType.class, ProductImportResult.class);
+        // Hibernate calls these constructors for the search and price projections
+        hints.reflection().registerType(ProductSummary.class, MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+        hints.reflection().registerType(ProductPrice.class, MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+
+        // loaded by name: the JDBC driver by Hikari, the dialect by Hibernate, the JCache provider from application.properties
+        for (String type : new String[]{"org.h2.Driver", "org.hibernate.dialect.H2Dialect",
+                "com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider"}) {
+            hints.reflection().registerType(TypeReference.of(type), MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+        }
+        // the second-level cache regions
+        hints.resources().registerPattern("application.conf");
+        hints.resources().registerPattern("db/migration/*.sql");
+    }
+}
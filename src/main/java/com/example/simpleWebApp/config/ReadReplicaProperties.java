@@ -0,0 +1,83 @@
+package com.example.simpleWebApp.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+// products.datasource.*: the replicas behind the read-replicas profile; the primary stays spring.datasource.*
+@ConfigurationProperties("products.datasource")
+public class ReadReplicaProperties {
+
+    private List<Replica> replicas = new ArrayList<>();
+
+    // How far replicas may trail the primary. A client that wrote something reads from the primary for this long.
+    private Duration replicaLagTolerance = Duration.ofSeconds(2);
+
+    // Local H2 stand-ins do not replicate anything, so Flyway has to create their schema too
+    private boolean migrateReplicas = false;
+
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    public void setReplicas(List<Replica> replicas) {
+        this.replicas = replicas;
+    }
+
+    public Duration getReplicaLagTolerance() {
+        return replicaLagTolerance;
+    }
+
+    public void setReplicaLagTolerance(Duration replicaLagTolerance) {
+        this.replicaLagTolerance = replicaLagTolerance;
+    }
+
+    public boolean isMigrateReplicas() {
+        return migrateReplicas;
+    }
+
+    public void setMigrateReplicas(boolean migrateReplicas) {
+        this.migrateReplicas = migrateReplicas;
+    }
+
+    public static class Replica {
+        private String url;
+        private String username = "sa";
+        private String password = "";
+        private int maximumPoolSize = 10;
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public void setUsername(String username) {
+            this.username = username;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+
+        public int getMaximumPoolSize() {
+            return maximumPoolSize;
+        }
+
+        public void setMaximumPoolSize(int maximumPoolSize) {
+            this.maximumPoolSize = maximumPoolSize;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.simpleWebApp.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+// Read-your-writes: a request that writes is served by the primary and leaves a cookie that keeps the same client's
+// reads on the primary until the replicas have had the lag tolerance to catch up with that write.
+@Component
+@Profile("read-replicas")
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    static final String COOKIE_NAME = "products-primary-until";
+
+    @Autowired
+    private ReadReplicaProperties replicaProperties;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long now = System.currentTimeMillis();
+        boolean write = !request.getMethod().equals("GET") && !request.getMethod().equals("HEAD");
+        if (write) {
+            // set before the chain runs, the body may already be committed afterwards
+            long tolerance = replicaProperties.getReplicaLagTolerance().toMillis();
+            Cookie cookie = new Cookie(COOKIE_NAME, Long.toString(now + tolerance));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) Math.max(1, Math.ceilDiv(tolerance, 1000)));
+            response.addCookie(cookie);
+        }
+        ReplicaRoutingDataSource.pinToPrimary(write || pinnedUntil(request) > now);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ReplicaRoutingDataSource.pinToPrimary(false);
+        }
+    }
+
+    private static long pinnedUntil(HttpServletRequest request) {
+        if (request.getCookies() == null) {
+            return 0;
+        }
+        for (Cookie cookie : request.getCookies()) {
+            if (COOKIE_NAME.equals(cookie.getName())) {
+                try {
+                    return Long.parseLong(cookie.getValue());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.simpleWebApp.config;
+
+import com.example.simpleWebApp.metrics.ErrorMetrics;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationInitializer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class StartupConfig {
+
+    // Kept eager under spring.main.lazy-initialization (the fast-start profile): migrations and Hibernate's schema
+    // validation must fail the start, not the first request, and the error counters are scraped from zero
+    @Bean
+    static LazyInitializationExcludeFilter eagerBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(FlywayMigrationInitializer.class, EntityManagerFactory.class,
+                ErrorMetrics.class);
+    }
+}
@@ -1,21 +1,75 @@
 package com.example.simpleWebApp.controller;
 
+import com.example.simpleWebApp.changes.ProductChangeFeed;
+import com.example.simpleWebApp.enums.ErrorCode;
+import com.example.simpleWebApp.enums.ImportFormat;
+import com.example.simpleWebApp.model.BatchItemResult;
 import com.example.simpleWebApp.model.GenericResponse;
 import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.model.ProductCacheStats;
+import com.example.simpleWebApp.model.ProductExport;
+import com.example.simpleWebApp.model.ProductImportResult;
+import com.example.simpleWebApp.model.ProductPage;
+import com.example.simpleWebApp.model.ProductPrice;
+import com.example.simpleWebApp.model.ProductSummary;
+import com.example.simpleWebApp.service.ProductBatchService;
+import com.example.simpleWebApp.service.ProductExportService;
+import com.example.simpleWebApp.service.ProductImportService;
 import com.example.simpleWebApp.service.ProductService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.catalina.Globals;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.DisconnectedClientHelper;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/api/products")
 public class ProductController {
 
+    private static final DisconnectedClientHelper DISCONNECTED_CLIENTS = new DisconnectedClientHelper(ProductController.class.getName());
+
     @Autowired
     private ProductService productService;
 
+    @Autowired
+    private ProductBatchService productBatchService;
+
+    @Autowired
+    private ProductExportService productExportService;
+
+    @Autowired
+    private ProductImportService productImportService;
+
+    @Autowired
+    private ProductChangeFeed productChangeFeed;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     // Create Product
     @PostMapping
     public ResponseEntity<GenericResponse<Product>> createProduct(@RequestBody Product product) {
@@ -23,40 +77,333 @@ public class ProductController {
         return buildResponse(response);
     }
 
-    // Get All Products
+    // Get All Products, a matching If-None-Match is answered with 304 before the database is touched
     @GetMapping
-    public ResponseEntity<GenericResponse<List<Product>>> getAllProducts() {
+    public ResponseEntity<GenericResponse<List<Product>>> getAllProducts(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        // taken before the rows are read, so a racing write can only make the tag older than the body, never newer
+        String etag = listETag();
+        if (etag != null && matchesAny(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
         GenericResponse<List<Product>> response = productService.getAllProducts();
+        return withETag(buildResponse(response), etag);
+    }
+
+    // Stream All Products as NDJSON, one row at a time
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllProducts() {
+        // let the servlet buffer decide when to flush instead of flushing after every row
+        ObjectWriter writer = objectMapper.writer()
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator("\n");
+        StreamingResponseBody body = outputStream -> {
+            try (SequenceWriter sequence = writer.writeValues(outputStream)) {
+                productService.streamAllProducts(product -> {
+                    try {
+                        sequence.write(product);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    // Export the whole catalog as gzipped JSON, sent as it is from the newest snapshot file
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportProducts(HttpServletRequest request,
+                                                                @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                                                @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        GenericResponse<ProductExport> response = productExportService.getExport();
+        ProductExport export = response.getData();
+        if (export == null) {
+            // the body type is fixed to StreamingResponseBody for the file paths, so the error is written by hand
+            return ResponseEntity.status(response.getErrorCode().getHttpStatus())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(outputStream -> objectMapper.writeValue(outputStream, response));
+        }
+        // weak, the same snapshot goes out gzipped or inflated
+        String etag = "W/\"export-" + export.getVersion() + "\"";
+        if (matchesAny(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(etag)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (!acceptsGzip(acceptEncoding)) {
+            // inflated on the fly for the odd client without gzip, still nothing is serialized
+            StreamingResponseBody body = outputStream -> {
+                try (InputStream in = new GZIPInputStream(Files.newInputStream(export.getFile()), 64 * 1024)) {
+                    in.transferTo(outputStream);
+                }
+            };
+            return ok.body(body);
+        }
+        ok.header(HttpHeaders.CONTENT_ENCODING, "gzip").contentLength(export.getSize());
+        if (Boolean.TRUE.equals(request.getAttribute(Globals.SENDFILE_SUPPORTED_ATTR))) {
+            // Tomcat hands the file to the socket with sendfile once this method returns
+            request.setAttribute(Globals.SENDFILE_FILENAME_ATTR, export.getFile().toString());
+            request.setAttribute(Globals.SENDFILE_FILE_START_ATTR, 0L);
+            request.setAttribute(Globals.SENDFILE_FILE_END_ATTR, export.getSize());
+            return ok.build();
+        }
+        StreamingResponseBody body = outputStream -> {
+            try (FileChannel channel = FileChannel.open(export.getFile())) {
+                WritableByteChannel target = Channels.newChannel(outputStream);
+                for (long position = 0; position < export.getSize(); ) {
+                    position += channel.transferTo(position, export.getSize() - position, target);
+                }
+            }
+        };
+        return ok.body(body);
+    }
+
+    // Stream product changes as Server-Sent Events, a reconnecting EventSource resumes from its Last-Event-ID.
+    // No produces: this is the answer to text/event-stream, */* and a missing Accept alike.
+    @GetMapping("/changes")
+    public SseEmitter streamChanges(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                                    @RequestParam(required = false) String after) {
+        return productChangeFeed.subscribeEvents(lastEventId != null ? lastEventId : after);
+    }
+
+    // Same feed as NDJSON, one change per line; resume with after=<epoch>-<offset> of the last line seen
+    @GetMapping(value = "/changes", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ResponseBodyEmitter> streamChangeLines(@RequestParam(required = false) String after) {
+        // a bare emitter leaves the response without a Content-Type, the lines are sent after the headers
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(productChangeFeed.subscribeLines(after));
+    }
+
+    // Get Products page by page, keyed on id
+    @GetMapping("/page")
+    public ResponseEntity<GenericResponse<ProductPage>> getProductsPage(@RequestParam(required = false) String cursor,
+                                                                        @RequestParam(required = false) Integer size,
+                                                                        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String etag = listETag();
+        if (etag != null && matchesAny(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+        GenericResponse<ProductPage> response = productService.getProductsPage(cursor, size);
+        return withETag(buildResponse(response), etag);
+    }
+
+    // Search Products by name prefix, description keyword and price range
+    @GetMapping("/search")
+    public ResponseEntity<GenericResponse<List<ProductSummary>>> searchProducts(@RequestParam(required = false) String name,
+                                                                                @RequestParam(required = false) String q,
+                                                                                @RequestParam(required = false) Double minPrice,
+                                                                                @RequestParam(required = false) Double maxPrice,
+                                                                                @RequestParam(required = false) String sort,
+                                                                                @RequestParam(required = false) Integer size) {
+        GenericResponse<List<ProductSummary>> response = productService.searchProducts(name, q, minPrice, maxPrice, sort, size);
         return buildResponse(response);
     }
 
-    // Get Product by ID
+    // Get the cheapest Products' ids and prices, optionally within a price range
+    @GetMapping("/prices")
+    public ResponseEntity<GenericResponse<List<ProductPrice>>> getPrices(@RequestParam(required = false) Double minPrice,
+                                                                         @RequestParam(required = false) Double maxPrice,
+                                                                         @RequestParam(required = false) Integer size) {
+        GenericResponse<List<ProductPrice>> response = productService.getPrices(minPrice, maxPrice, size);
+        return buildResponse(response);
+    }
+
+    // Get product cache hit/miss/eviction counters
+    @GetMapping("/cache/stats")
+    public ResponseEntity<GenericResponse<ProductCacheStats>> getCacheStats() {
+        GenericResponse<ProductCacheStats> response = productService.getCacheStats();
+        return buildResponse(response);
+    }
+
+    // Get Product by ID, an unchanged product costs a cache lookup and a 304 without a body
     @GetMapping("/{id}")
-    public ResponseEntity<GenericResponse<Product>> getProductById(@PathVariable Long id) {
+    public ResponseEntity<GenericResponse<Product>> getProductById(@PathVariable Long id,
+                                                                   @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         GenericResponse<Product> response = productService.getProductById(id);
-        return buildResponse(response);
+        String etag = productETag(response.getData());
+        if (etag != null && matchesAny(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+        return withETag(buildResponse(response), etag);
     }
 
-    // Update Product
+    // Update Product, If-Match turns it into a conditional update on the version in the ETag
     @PutMapping("/{id}")
-    public ResponseEntity<GenericResponse<Product>> updateProduct(@PathVariable Long id, @RequestBody Product productDetails) {
-        GenericResponse<Product> response = productService.updateProduct(id, productDetails);
+    public ResponseEntity<GenericResponse<Product>> updateProduct(@PathVariable Long id, @RequestBody Product productDetails,
+                                                                  @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        if (ifMatch != null) {
+            try {
+                Long version = ifMatchVersion(id, ifMatch);
+                if (version != null) {
+                    productDetails.setVersion(version);
+                }
+            } catch (IllegalArgumentException e) {
+                return buildResponse(preconditionFailed());
+            }
+        }
+        GenericResponse<Product> response = checkPrecondition(productService.updateProduct(id, productDetails), ifMatch);
+        return withETag(buildResponse(response), productETag(response.getData()));
+    }
+
+    // Partially update Product, only the fields in the body are written
+    @PatchMapping(value = "/{id}", consumes = {"application/merge-patch+json", MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<GenericResponse<Product>> patchProduct(@PathVariable Long id, @RequestBody Map<String, Object> patch) {
+        GenericResponse<Product> response = productService.patchProduct(id, patch);
         return buildResponse(response);
     }
 
     // Delete Product
     @DeleteMapping("/{id}")
-    public ResponseEntity<GenericResponse<Void>> deleteProduct(@PathVariable Long id) {
-        GenericResponse<Void> response = productService.deleteProduct(id);
+    public ResponseEntity<GenericResponse<Void>> deleteProduct(@PathVariable Long id,
+                                                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Long version = null;
+        if (ifMatch != null) {
+            try {
+                version = ifMatchVersion(id, ifMatch);
+            } catch (IllegalArgumentException e) {
+                return buildResponse(preconditionFailed());
+            }
+        }
+        GenericResponse<Void> response = checkPrecondition(productService.deleteProduct(id, version), ifMatch);
         return buildResponse(response);
     }
 
-    // Utility method to build the response based on ApiResponse
-    private <T> ResponseEntity<GenericResponse<T>> buildResponse(GenericResponse<T> response) {
+    // Create Products in bulk
+    @PostMapping("/batch")
+    public ResponseEntity<GenericResponse<List<BatchItemResult>>> createProducts(@RequestBody List<Product> products) {
+        GenericResponse<List<BatchItemResult>> response = productBatchService.createProducts(products);
+        return buildResponse(response);
+    }
+
+    // Update Products in bulk, every element must carry its id
+    @PutMapping("/batch")
+    public ResponseEntity<GenericResponse<List<BatchItemResult>>> updateProducts(@RequestBody List<Product> products) {
+        GenericResponse<List<BatchItemResult>> response = productBatchService.updateProducts(products);
+        return buildResponse(response);
+    }
+
+    // Delete Products in bulk by id
+    @DeleteMapping("/batch")
+    public ResponseEntity<GenericResponse<List<BatchItemResult>>> deleteProducts(@RequestBody List<Long> ids) {
+        GenericResponse<List<BatchItemResult>> response = productBatchService.deleteProducts(ids);
+        return buildResponse(response);
+    }
+
+    // A stream whose client hung up ends in an async dispatch with the write's IOException, that is not a server error
+    @ExceptionHandler(IOException.class)
+    public void handleIOException(IOException e) throws IOException {
+        if (!DISCONNECTED_CLIENTS.checkAndLogClientDisconnectedException(e)) {
+            throw e;
+        }
+    }
+
+    // Import Products in bulk from a CSV (header line, then a product per line) or NDJSON body.
+    // With an uploadId the import is resumable: after a failure, send the same body with the same uploadId again.
+    @PostMapping(value = "/import", consumes = {"text/csv", MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<GenericResponse<ProductImportResult>> importProducts(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                                               @RequestParam(required = false) String uploadId,
+                                                                               HttpServletRequest request) throws IOException {
+        ImportFormat format = MediaType.APPLICATION_NDJSON.isCompatibleWith(MediaType.parseMediaType(contentType))
+                ? ImportFormat.NDJSON
+                : ImportFormat.CSV;
+        GenericResponse<ProductImportResult> response = productImportService.importStream(request.getInputStream(), format, uploadId);
+        return buildResponse(response);
+    }
+
+    // Utility method to build the response based on ApiResponse, package-private for the JMH benchmarks
+    static <T> ResponseEntity<GenericResponse<T>> buildResponse(GenericResponse<T> response) {
         if (response.getErrorMessage() == null) {
             return ResponseEntity.ok(response);
         } else {
             return ResponseEntity.status(response.getErrorCode().getHttpStatus()).body(response);
         }
     }
+
+    // Strong ETag "<id>-<version>"; the version is bumped by every write, so it changes exactly when the row does
+    static String productETag(Product product) {
+        if (product == null || product.getId() == null || product.getVersion() == null) {
+            return null;
+        }
+        return "\"" + product.getId() + "-" + product.getVersion() + "\"";
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim();
+            if (name.equalsIgnoreCase("gzip") || name.equals("*")) {
+                // gzip;q=0 means the client refuses it
+                return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    // Weak, Tomcat only gzips responses without a strong ETag and the gzipped bytes differ from the plain ones.
+    // Null, so no tag and no 304, when the rows may come from a lagging replica.
+    private String listETag() {
+        String version = productService.getListETagVersion();
+        return version == null ? null : "W/\"" + version + "\"";
+    }
+
+    // If-None-Match uses the weak comparison, so W/ tags from intermediaries still match
+    static boolean matchesAny(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaque = stripWeak(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*") || stripWeak(candidate).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Version the client expects for this id; null for "*". Throws if the tag can never match, which is a 412.
+    static Long ifMatchVersion(Long id, String ifMatch) {
+        String tag = ifMatch.trim();
+        if (tag.equals("*")) {
+            return null;
+        }
+        String prefix = "\"" + id + "-";
+        if (!tag.startsWith(prefix) || !tag.endsWith("\"") || tag.length() <= prefix.length() + 1) {
+            throw new IllegalArgumentException("ETag does not belong to this product");
+        }
+        return Long.parseLong(tag.substring(prefix.length(), tag.length() - 1));
+    }
+
+    // A stale If-Match is a failed precondition, not a conflict in the body. With no current row nothing can match,
+    // not even "*", so a missing product is a failed precondition too rather than a 404.
+    private static <T> GenericResponse<T> checkPrecondition(GenericResponse<T> response, String ifMatch) {
+        if (ifMatch != null && (response.getErrorCode() == ErrorCode.PRODUCT_VERSION_CONFLICT
+                || response.getErrorCode() == ErrorCode.PRODUCT_NOT_FOUND)) {
+            return preconditionFailed();
+        }
+        return response;
+    }
+
+    private static <T> GenericResponse<T> preconditionFailed() {
+        return new GenericResponse<>("Product has been modified", ErrorCode.PRECONDITION_FAILED);
+    }
+
+    private static String stripWeak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+
+    private static <T> ResponseEntity<T> withETag(ResponseEntity<T> response, String etag) {
+        if (etag == null || !response.getStatusCode().is2xxSuccessful()) {
+            return response;
+        }
+        return ResponseEntity.status(response.getStatusCode()).headers(response.getHeaders()).eTag(etag).body(response.getBody());
+    }
 }
@@ -0,0 +1,83 @@
+package com.example.simpleWebApp.controller;
+
+import com.example.simpleWebApp.model.GenericResponse;
+import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.model.ProductPage;
+import com.example.simpleWebApp.service.ReactiveProductService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+// WebFlux version of ProductController, replaces it under the reactive profile
+@RestController
+@Profile("reactive")
+@RequestMapping("/api/products")
+public class ReactiveProductController {
+
+    @Autowired
+    private ReactiveProductService reactiveProductService;
+
+    // Create Product
+    @PostMapping
+    public Mono<ResponseEntity<GenericResponse<Product>>> createProduct(@RequestBody Product product) {
+        return reactiveProductService.createProduct(product).map(this::buildResponse);
+    }
+
+    // Get All Products
+    @GetMapping
+    public Mono<ResponseEntity<GenericResponse<List<Product>>>> getAllProducts() {
+        return reactiveProductService.getAllProducts().map(this::buildResponse);
+    }
+
+    // Stream All Products as NDJSON, rows are read as the client consumes them
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Product> streamAllProducts() {
+        return reactiveProductService.streamAllProducts();
+    }
+
+    // Get Products page by page, keyed on id
+    @GetMapping("/page")
+    public Mono<ResponseEntity<GenericResponse<ProductPage>>> getProductsPage(@RequestParam(required = false) String cursor,
+                                                                              @RequestParam(required = false) Integer size) {
+        return reactiveProductService.getProductsPage(cursor, size).map(this::buildResponse);
+    }
+
+    // Get Product by ID
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<GenericResponse<Product>>> getProductById(@PathVariable Long id) {
+        return reactiveProductService.getProductById(id).map(this::buildResponse);
+    }
+
+    // Update Product
+    @PutMapping("/{id}")
+    public Mono<ResponseEntity<GenericResponse<Product>>> updateProduct(@PathVariable Long id, @RequestBody Product productDetails) {
+        return reactiveProductService.updateProduct(id, productDetails).map(this::buildResponse);
+    }
+
+    // Partially update Product, only the fields in the body are written
+    @PatchMapping(value = "/{id}", consumes = {"application/merge-patch+json", MediaType.APPLICATION_JSON_VALUE})
+    public Mono<ResponseEntity<GenericResponse<Product>>> patchProduct(@PathVariable Long id, @RequestBody Map<String, Object> patch) {
+        return reactiveProductService.patchProduct(id, patch).map(this::buildResponse);
+    }
+
+    // Delete Product
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<GenericResponse<Void>>> deleteProduct(@PathVariable Long id) {
+        return reactiveProductService.deleteProduct(id).map(this::buildResponse);
+    }
+
+    private <T> ResponseEntity<GenericResponse<T>> buildResponse(GenericResponse<T> response) {
+        if (response.getErrorMessage() == null) {
+            return ResponseEntity.ok(response);
+        } else {
+            return ResponseEntity.status(response.getErrorCode().getHttpStatus()).body(response);
+        }
+    }
+}
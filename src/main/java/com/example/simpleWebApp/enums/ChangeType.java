@@ -0,0 +1,9 @@
+package com.example.simpleWebApp.enums;
+
+public enum ChangeType {
+    CREATED,
+    UPDATED,
+    DELETED,
+    // not a change: the subscriber missed events and has to read the list again, then resume from this offset
+    RESET
+}
@@ -6,7 +6,11 @@ public enum ErrorCode {
     BAD_REQUEST(400),
     PRODUCT_CREATION_FAILED(500),
     PRODUCT_UPDATE_FAILED(500),
-    PRODUCT_DELETION_FAILED(500);
+    PRODUCT_DELETION_FAILED(500),
+    PRODUCT_VERSION_CONFLICT(409),
+    PRECONDITION_FAILED(412),
+    TOO_MANY_REQUESTS(429),
+    SERVICE_UNAVAILABLE(503);
 
     private final int httpStatus;
 
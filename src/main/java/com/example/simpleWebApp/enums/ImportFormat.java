@@ -0,0 +1,8 @@
+package com.example.simpleWebApp.enums;
+
+public enum ImportFormat {
+    // header line naming the columns, then one product per line
+    CSV,
+    // one JSON product per line
+    NDJSON
+}
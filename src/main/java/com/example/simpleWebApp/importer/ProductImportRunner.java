@@ -0,0 +1,64 @@
+package com.example.simpleWebApp.importer;
+
+import com.example.simpleWebApp.enums.ImportFormat;
+import com.example.simpleWebApp.model.GenericResponse;
+import com.example.simpleWebApp.model.ProductImportResult;
+import com.example.simpleWebApp.service.ProductImportService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+// Imports a file on startup and exits with 0 or 1:
+//   java -jar app.jar --products.import.file=catalog.csv --spring.main.web-application-type=none
+// The format follows the extension (.ndjson or .jsonl, anything else is CSV) unless products.import.format is set.
+// Run it again with the same file after an interruption and it carries on from the last committed chunk.
+@Component
+@ConditionalOnProperty("products.import.file")
+public class ProductImportRunner implements CommandLineRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductImportRunner.class);
+
+    @Autowired
+    private ProductImportService productImportService;
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    @Value("${products.import.file}")
+    private Path file;
+
+    @Value("${products.import.format:}")
+    private String format;
+
+    // off to keep the application running once the import is done
+    @Value("${products.import.exit:true}")
+    private boolean exit;
+
+    @Override
+    public void run(String... args) {
+        GenericResponse<ProductImportResult> response = productImportService.importFile(file, formatOf(file, format));
+        if (response.getErrorMessage() != null) {
+            log.error("Import of {} failed: {}", file, response.getErrorMessage());
+        }
+        if (exit) {
+            System.exit(SpringApplication.exit(context, () -> response.getErrorMessage() == null ? 0 : 1));
+        }
+    }
+
+    static ImportFormat formatOf(Path file, String format) {
+        if (!format.isBlank()) {
+            return ImportFormat.valueOf(format.strip().toUpperCase(Locale.ROOT));
+        }
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".ndjson") || name.endsWith(".jsonl") ? ImportFormat.NDJSON : ImportFormat.CSV;
+    }
+}
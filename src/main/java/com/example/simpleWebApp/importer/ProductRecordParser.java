@@ -0,0 +1,210 @@
+package com.example.simpleWebApp.importer;
+
+import com.example.simpleWebApp.enums.ImportFormat;
+import com.example.simpleWebApp.model.Product;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+// Parses the lines of one chunk of an import file into products, straight from the (memory-mapped) buffer.
+// Immutable and thread-safe, every parse call has its own scratch space, so one instance serves all chunk tasks.
+// A record is one line: a CSV field may be quoted ("" for a quote) but may not contain a line break, which is what
+// lets the file be split at any newline and the chunks be parsed independently.
+public class ProductRecordParser {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductRecordParser.class);
+
+    // name and description are varchar(255), a longer value would fail the whole chunk's transaction
+    static final int MAX_TEXT_LENGTH = 255;
+    // per chunk, a file full of bad lines should not turn into a log full of them
+    private static final int LOGGED_FAILURES = 10;
+
+    private final ImportFormat format;
+    private final ObjectReader productReader;
+    // CSV column positions, -1 for an absent description
+    private final int nameColumn;
+    private final int descriptionColumn;
+    private final int priceColumn;
+    private final int columns;
+
+    private ProductRecordParser(ImportFormat format, ObjectReader productReader, int nameColumn, int descriptionColumn, int priceColumn) {
+        this.format = format;
+        this.productReader = productReader;
+        this.nameColumn = nameColumn;
+        this.descriptionColumn = descriptionColumn;
+        this.priceColumn = priceColumn;
+        this.columns = Math.max(nameColumn, Math.max(descriptionColumn, priceColumn)) + 1;
+    }
+
+    public static ProductRecordParser ndjson(ObjectReader productReader) {
+        return new ProductRecordParser(ImportFormat.NDJSON, productReader, -1, -1, -1);
+    }
+
+    // The header names the columns in any order; name and price are required, description and others are optional
+    public static ProductRecordParser csv(String header) {
+        // a byte order mark from a spreadsheet export would otherwise stick to the first column name
+        String[] names = header.replace("\uFEFF", "").strip().split(",");
+        int name = -1;
+        int description = -1;
+        int price = -1;
+        for (int i = 0; i < names.length; i++) {
+            switch (names[i].strip().replace("\"", "").toLowerCase(Locale.ROOT)) {
+                case "name" -> name = i;
+                case "description" -> description = i;
+                case "price" -> price = i;
+                default -> {
+                }
+            }
+        }
+        if (name < 0 || price < 0) {
+            throw new IllegalArgumentException("CSV header must have name and price columns");
+        }
+        return new ProductRecordParser(ImportFormat.CSV, null, name, description, price);
+    }
+
+    // Adds a product per valid line to products and returns how many non-empty lines were not valid.
+    // offset is where the chunk starts in the file, only used to point at bad lines in the log.
+    public int parse(ByteBuffer chunk, long offset, List<Product> products) {
+        Scratch scratch = new Scratch();
+        int failed = 0;
+        int limit = chunk.limit();
+        int start = chunk.position();
+        while (start < limit) {
+            int end = start;
+            while (end < limit && chunk.get(end) != '\n') {
+                end++;
+            }
+            int next = end + 1;
+            if (end > start && chunk.get(end - 1) == '\r') {
+                end--;
+            }
+            if (end > start) {
+                Product product = format == ImportFormat.CSV ? parseCsv(chunk, start, end, scratch) : parseJson(chunk, start, end, scratch);
+                if (product != null && isValid(product)) {
+                    products.add(product);
+                } else {
+                    if (failed < LOGGED_FAILURES) {
+                        log.warn("Skipping invalid {} record at byte {}", format, offset + start);
+                    }
+                    failed++;
+                }
+            }
+            start = next;
+        }
+        return failed;
+    }
+
+    private Product parseCsv(ByteBuffer chunk, int start, int end, Scratch scratch) {
+        String[] fields = scratch.fields(columns);
+        int field = 0;
+        int i = start;
+        while (true) {
+            String value;
+            if (i < end && chunk.get(i) == '"') {
+                int length = 0;
+                i++;
+                while (true) {
+                    if (i >= end) {
+                        return null;
+                    }
+                    byte b = chunk.get(i++);
+                    if (b == '"') {
+                        if (i < end && chunk.get(i) == '"') {
+                            i++;
+                        } else {
+                            break;
+                        }
+                    }
+                    scratch.ensure(length + 1)[length++] = b;
+                }
+                if (i < end && chunk.get(i) != ',') {
+                    return null;
+                }
+                value = new String(scratch.bytes, 0, length, StandardCharsets.UTF_8);
+            } else {
+                int fieldEnd = i;
+                while (fieldEnd < end && chunk.get(fieldEnd) != ',') {
+                    fieldEnd++;
+                }
+                value = fieldEnd == i ? null : decode(chunk, i, fieldEnd, scratch);
+                i = fieldEnd;
+            }
+            if (field < columns) {
+                fields[field] = value;
+            }
+            field++;
+            if (i >= end) {
+                break;
+            }
+            // past the comma; one right at the end of the line leaves an empty last field
+            i++;
+        }
+        if (field < columns || fields[priceColumn] == null) {
+            return null;
+        }
+        try {
+            Product product = new Product();
+            product.setName(fields[nameColumn]);
+            product.setDescription(descriptionColumn < 0 ? null : fields[descriptionColumn]);
+            product.setPrice(Double.parseDouble(fields[priceColumn].strip()));
+            return product;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private Product parseJson(ByteBuffer chunk, int start, int end, Scratch scratch) {
+        byte[] line = scratch.ensure(end - start);
+        chunk.get(start, line, 0, end - start);
+        try {
+            Product product = productReader.readValue(line, 0, end - start);
+            if (product == null) {
+                return null;
+            }
+            // ids and versions are the database's to hand out
+            product.setId(null);
+            product.setVersion(null);
+            return product;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String decode(ByteBuffer chunk, int start, int end, Scratch scratch) {
+        byte[] bytes = scratch.ensure(end - start);
+        chunk.get(start, bytes, 0, end - start);
+        return new String(bytes, 0, end - start, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isValid(Product product) {
+        return Double.isFinite(product.getPrice())
+                && (product.getName() == null || product.getName().length() <= MAX_TEXT_LENGTH)
+                && (product.getDescription() == null || product.getDescription().length() <= MAX_TEXT_LENGTH);
+    }
+
+    // reused across the lines of one chunk
+    private static class Scratch {
+        private byte[] bytes = new byte[256];
+        private String[] fields;
+
+        byte[] ensure(int length) {
+            if (bytes.length < length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length, bytes.length * 2));
+            }
+            return bytes;
+        }
+
+        String[] fields(int columns) {
+            if (fields == null) {
+                fields = new String[columns];
+            }
+            return fields;
+        }
+    }
+}
@@ -0,0 +1,577 @@
+package com.example.simpleWebApp.index;
+
+import com.example.simpleWebApp.enums.ChangeType;
+import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.repository.ProductRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongSupplier;
+
+// Every product's id and price in primitive arrays sorted by price and then id, so a price range or the N cheapest
+// products is a binary search and a copy, with no boxing, no entities and no allocation.
+// The sorted entries are split into blocks of at most BLOCK_SIZE, so a write shifts one block and not the whole index,
+// and an open-addressing table from id to price and version finds a product's entry without a scan.
+// Built from the database on start and kept current by the writes made through this instance. Reads are optimistic:
+// they copy without taking the lock and only retry under the read lock if a write ran at the same time. A rebuild
+// scans the database into new arrays without the lock and only takes it to swap them in.
+@Component
+@ConditionalOnProperty(name = "products.price-index.enabled", havingValue = "true")
+public class ProductPriceIndex implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductPriceIndex.class);
+
+    static final int BLOCK_SIZE = 1024;
+    // a rebuild leaves room in every block, so the first inserts do not split them all
+    private static final int BUILD_FILL = BLOCK_SIZE * 3 / 4;
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    // a write without a version, always applied, never makes a later versioned one look stale
+    private static final long UNKNOWN_VERSION = -1;
+    // ids are never reused, so a deleted id stays a tombstone and late writes for it are dropped. Writes are applied
+    // right after their commit, a late one arrives within moments; a tombstone older than TOMBSTONE_TTL_MILLIS has
+    // done its job and is dropped once enough of them pile up.
+    private static final long DELETED = Long.MAX_VALUE;
+    private static final long TOMBSTONE_TTL_MILLIS = 60_000;
+    private static final int COMPACT_MIN_TOMBSTONES = 1024;
+
+    private final StampedLock lock = new StampedLock();
+    private final Object rebuildLock = new Object();
+    private final LongSupplier millisClock;
+
+    // guarded by lock. Block b holds blockSizes[b] entries, ids and prices sorted together; blocks are in order too.
+    private long[][] blockIds;
+    private double[][] blockPrices;
+    private int[] blockSizes;
+    private int blocks;
+    private int size;
+
+    // guarded by lock. id to its indexed price and version, linear probing; EMPTY marks a free slot.
+    // For a tombstone the price slot holds the time of the delete instead.
+    private long[] keys;
+    private double[] keyPrices;
+    private long[] keyVersions;
+    private int keyCount;
+    private int tombstones;
+    private long lastCompaction;
+
+    // guarded by lock. Writes applied while a rebuild scans the database, replayed on its result; null otherwise
+    private List<RecordedWrite> recorded;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    private volatile boolean ready;
+    private volatile boolean running;
+
+    public ProductPriceIndex() {
+        this(System::currentTimeMillis);
+    }
+
+    public ProductPriceIndex(LongSupplier millisClock) {
+        this.millisClock = millisClock;
+        this.lastCompaction = millisClock.getAsLong();
+        clear(0);
+    }
+
+    @Autowired
+    void registerMetrics(MeterRegistry meterRegistry) {
+        Gauge.builder("product.price-index.size", this, ProductPriceIndex::size)
+                .description("Products in the in-memory price index")
+                .register(meterRegistry);
+        Gauge.builder("product.price-index.tombstones", this, ProductPriceIndex::tombstones)
+                .description("Deleted ids the price index still remembers")
+                .register(meterRegistry);
+    }
+
+    // False until the first build has finished, callers fall back to the database until then
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public int tombstones() {
+        long stamp = lock.readLock();
+        try {
+            return tombstones;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Copies the cheapest products priced between min and max (inclusive) into ids and prices, as many as fit.
+    // Returns how many were copied.
+    public int range(double min, double max, long[] outIds, double[] outPrices) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            int found = copyRange(min, max, outIds, outPrices);
+            if (lock.validate(stamp)) {
+                return found;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return copyRange(min, max, outIds, outPrices);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Writes are applied after their commit, so two of them for the same product can arrive in either order:
+    // the product's version says which one is newer
+    public void apply(ChangeType type, Long id, Product product) {
+        if (type == ChangeType.DELETED) {
+            remove(id);
+        } else if (product != null) {
+            put(id, product.getPrice(), product.getVersion() == null ? UNKNOWN_VERSION : product.getVersion());
+        }
+    }
+
+    public void put(long id, double price) {
+        put(id, price, UNKNOWN_VERSION);
+    }
+
+    public void put(long id, double price, long version) {
+        long stamp = lock.writeLock();
+        try {
+            if (recorded != null) {
+                recorded.add(new RecordedWrite(id, price, version, false));
+            }
+            putLocked(id, price, version);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void remove(long id) {
+        long stamp = lock.writeLock();
+        try {
+            if (recorded != null) {
+                recorded.add(new RecordedWrite(id, 0, DELETED, true));
+            }
+            removeLocked(id);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // The scan runs without the lock, so reads and writes go on while it does. Writes applied meanwhile are recorded
+    // and replayed on the new arrays under the lock, right before they replace the old ones, so none is lost.
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            long stamp = lock.writeLock();
+            try {
+                recorded = new ArrayList<>();
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            ProductPriceIndex built = null;
+            try {
+                ProductPriceIndex loading = new ProductPriceIndex(millisClock);
+                loading.load(productRepository.findPriceIndexEntries());
+                built = loading;
+            } finally {
+                stamp = lock.writeLock();
+                try {
+                    if (built != null) {
+                        swap(built);
+                        ready = true;
+                    }
+                    recorded = null;
+                } finally {
+                    lock.unlockWrite(stamp);
+                }
+            }
+            log.info("Price index built with {} products in {} blocks", built.size, built.blocks);
+        }
+    }
+
+    private void load(List<Object[]> all) {
+        clear(all.size());
+        for (Object[] entry : all) {
+            long id = (Long) entry[0];
+            double price = (Double) entry[1];
+            if (blocks == 0 || blockSizes[blocks - 1] == BUILD_FILL) {
+                addBlock(blocks, new long[BLOCK_SIZE], new double[BLOCK_SIZE]);
+            }
+            int b = blocks - 1;
+            blockIds[b][blockSizes[b]] = id;
+            blockPrices[b][blockSizes[b]] = price;
+            blockSizes[b]++;
+            size++;
+            addKey(slot(id), id, price, entry[2] == null ? UNKNOWN_VERSION : (Long) entry[2]);
+        }
+    }
+
+    // Under the write lock: takes over what a rebuild loaded and brings it up to date
+    private void swap(ProductPriceIndex built) {
+        long now = millisClock.getAsLong();
+        // a recent delete of a row the scan no longer saw still has to keep late writes for it out
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY && keyVersions[i] == DELETED && !expired(keyVersions[i], keyPrices[i], now)) {
+                int slot = built.slot(keys[i]);
+                if (built.keys[slot] == EMPTY) {
+                    built.addKey(slot, keys[i], keyPrices[i], DELETED);
+                    built.tombstones++;
+                }
+            }
+        }
+        blockIds = built.blockIds;
+        blockPrices = built.blockPrices;
+        blockSizes = built.blockSizes;
+        blocks = built.blocks;
+        size = built.size;
+        keys = built.keys;
+        keyPrices = built.keyPrices;
+        keyVersions = built.keyVersions;
+        keyCount = built.keyCount;
+        tombstones = built.tombstones;
+        for (RecordedWrite write : recorded) {
+            if (write.deleted()) {
+                removeLocked(write.id());
+            } else {
+                putLocked(write.id(), write.price(), write.version());
+            }
+        }
+    }
+
+    private void putLocked(long id, double price, long version) {
+        int slot = slot(id);
+        if (keys[slot] == EMPTY) {
+            addKey(slot, id, price, version);
+            insert(id, price);
+            return;
+        }
+        long indexed = keyVersions[slot];
+        if (indexed == DELETED || (version != UNKNOWN_VERSION && indexed != UNKNOWN_VERSION && version < indexed)) {
+            return;
+        }
+        if (version != UNKNOWN_VERSION) {
+            keyVersions[slot] = version;
+        }
+        if (keyPrices[slot] != price) {
+            delete(id, keyPrices[slot]);
+            keyPrices[slot] = price;
+            insert(id, price);
+        }
+    }
+
+    private void removeLocked(long id) {
+        long now = millisClock.getAsLong();
+        int slot = slot(id);
+        if (keys[slot] == EMPTY) {
+            // the delete overtook the create, keep the create out
+            addKey(slot, id, now, DELETED);
+            tombstones++;
+        } else if (keyVersions[slot] != DELETED) {
+            delete(id, keyPrices[slot]);
+            keyVersions[slot] = DELETED;
+            keyPrices[slot] = now;
+            tombstones++;
+        }
+        // at most once per TOMBSTONE_TTL_MILLIS, so a burst of fresh tombstones does not compact on every delete
+        if (tombstones >= Math.max(COMPACT_MIN_TOMBSTONES, (keyCount - tombstones) / 2)
+                && now - lastCompaction >= TOMBSTONE_TTL_MILLIS) {
+            compactKeys(now);
+        }
+    }
+
+    // Drops the tombstones no late write can still need and shrinks the id table with them
+    private void compactKeys(long now) {
+        long[] oldKeys = keys;
+        double[] oldPrices = keyPrices;
+        long[] oldVersions = keyVersions;
+        int kept = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY && !expired(oldVersions[i], oldPrices[i], now)) {
+                kept++;
+            }
+        }
+        allocateKeys(Integer.highestOneBit(Math.max(16, kept) * 4 - 1));
+        keyCount = 0;
+        tombstones = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY && !expired(oldVersions[i], oldPrices[i], now)) {
+                int to = slot(oldKeys[i]);
+                keys[to] = oldKeys[i];
+                keyPrices[to] = oldPrices[i];
+                keyVersions[to] = oldVersions[i];
+                keyCount++;
+                if (oldVersions[i] == DELETED) {
+                    tombstones++;
+                }
+            }
+        }
+        lastCompaction = now;
+    }
+
+    private static boolean expired(long version, double deletedAt, long now) {
+        return version == DELETED && now - (long) deletedAt >= TOMBSTONE_TTL_MILLIS;
+    }
+
+    // Under an optimistic read the fields can change under it: only locals are used and every index is bounded
+    // by the arrays it reads, so a torn read gives a wrong count that validate() throws away, never an exception
+    private int copyRange(double min, double max, long[] outIds, double[] outPrices) {
+        long[][] blockIds = this.blockIds;
+        double[][] blockPrices = this.blockPrices;
+        int[] blockSizes = this.blockSizes;
+        int blocks = Math.min(this.blocks, Math.min(blockSizes.length, Math.min(blockIds.length, blockPrices.length)));
+        int limit = Math.min(outIds.length, outPrices.length);
+        int count = 0;
+        // the first block whose last price reaches min
+        int low = 0;
+        int high = blocks;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            double[] prices = blockPrices[mid];
+            int n = prices == null ? 0 : Math.min(blockSizes[mid], prices.length);
+            if (n > 0 && prices[n - 1] < min) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int b = low; b < blocks && count < limit; b++) {
+            long[] ids = blockIds[b];
+            double[] prices = blockPrices[b];
+            if (ids == null || prices == null) {
+                break;
+            }
+            int n = Math.min(blockSizes[b], Math.min(ids.length, prices.length));
+            for (int i = b == low ? lowerBound(prices, n, min) : 0; i < n && count < limit; i++) {
+                if (prices[i] > max) {
+                    return count;
+                }
+                outIds[count] = ids[i];
+                outPrices[count] = prices[i];
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // first position whose price is at least min
+    private static int lowerBound(double[] prices, int n, double min) {
+        int low = 0;
+        int high = n;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (prices[mid] < min) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static boolean before(double price, long id, double otherPrice, long otherId) {
+        return price < otherPrice || (price == otherPrice && id < otherId);
+    }
+
+    // The block (price, id) belongs in: the first whose last entry does not sort before it, else the last block
+    private int blockOf(long id, double price) {
+        int low = 0;
+        int high = blocks - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int last = blockSizes[mid] - 1;
+            if (before(blockPrices[mid][last], blockIds[mid][last], price, id)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // first position in block b that does not sort before (price, id)
+    private int positionIn(int b, long id, double price) {
+        long[] ids = blockIds[b];
+        double[] prices = blockPrices[b];
+        int low = 0;
+        int high = blockSizes[b];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (before(prices[mid], ids[mid], price, id)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void insert(long id, double price) {
+        if (blocks == 0) {
+            addBlock(0, new long[BLOCK_SIZE], new double[BLOCK_SIZE]);
+        }
+        int b = blockOf(id, price);
+        if (blockSizes[b] == BLOCK_SIZE) {
+            split(b);
+            int last = blockSizes[b] - 1;
+            if (before(blockPrices[b][last], blockIds[b][last], price, id)) {
+                b++;
+            }
+        }
+        int position = positionIn(b, id, price);
+        int n = blockSizes[b];
+        System.arraycopy(blockIds[b], position, blockIds[b], position + 1, n - position);
+        System.arraycopy(blockPrices[b], position, blockPrices[b], position + 1, n - position);
+        blockIds[b][position] = id;
+        blockPrices[b][position] = price;
+        blockSizes[b]++;
+        size++;
+    }
+
+    private void delete(long id, double price) {
+        if (blocks == 0) {
+            return;
+        }
+        int b = blockOf(id, price);
+        int position = positionIn(b, id, price);
+        int n = blockSizes[b];
+        if (position == n || blockIds[b][position] != id) {
+            return;
+        }
+        System.arraycopy(blockIds[b], position + 1, blockIds[b], position, n - position - 1);
+        System.arraycopy(blockPrices[b], position + 1, blockPrices[b], position, n - position - 1);
+        blockSizes[b]--;
+        size--;
+        if (blockSizes[b] == 0) {
+            removeBlock(b);
+        }
+    }
+
+    // Moves the upper half of a full block into a new block right after it
+    private void split(int b) {
+        int half = BLOCK_SIZE / 2;
+        long[] ids = new long[BLOCK_SIZE];
+        double[] prices = new double[BLOCK_SIZE];
+        System.arraycopy(blockIds[b], half, ids, 0, BLOCK_SIZE - half);
+        System.arraycopy(blockPrices[b], half, prices, 0, BLOCK_SIZE - half);
+        addBlock(b + 1, ids, prices);
+        blockSizes[b + 1] = BLOCK_SIZE - half;
+        blockSizes[b] = half;
+    }
+
+    private void addBlock(int at, long[] ids, double[] prices) {
+        if (blocks == blockIds.length) {
+            int capacity = blocks + (blocks >> 1) + 1;
+            blockIds = Arrays.copyOf(blockIds, capacity);
+            blockPrices = Arrays.copyOf(blockPrices, capacity);
+            blockSizes = Arrays.copyOf(blockSizes, capacity);
+        }
+        System.arraycopy(blockIds, at, blockIds, at + 1, blocks - at);
+        System.arraycopy(blockPrices, at, blockPrices, at + 1, blocks - at);
+        System.arraycopy(blockSizes, at, blockSizes, at + 1, blocks - at);
+        blockIds[at] = ids;
+        blockPrices[at] = prices;
+        blockSizes[at] = 0;
+        blocks++;
+    }
+
+    private void removeBlock(int b) {
+        System.arraycopy(blockIds, b + 1, blockIds, b, blocks - b - 1);
+        System.arraycopy(blockPrices, b + 1, blockPrices, b, blocks - b - 1);
+        System.arraycopy(blockSizes, b + 1, blockSizes, b, blocks - b - 1);
+        blocks--;
+        blockIds[blocks] = null;
+        blockPrices[blocks] = null;
+        blockSizes[blocks] = 0;
+    }
+
+    // The slot holding id, or the free slot where it would go
+    private int slot(long id) {
+        int mask = keys.length - 1;
+        int slot = Long.hashCode(id * 0x9E3779B97F4A7C15L) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void addKey(int slot, long id, double price, long version) {
+        keys[slot] = id;
+        keyPrices[slot] = price;
+        keyVersions[slot] = version;
+        keyCount++;
+        // at most half full, so probe sequences stay short
+        if (keyCount * 2 > keys.length) {
+            long[] oldKeys = keys;
+            double[] oldPrices = keyPrices;
+            long[] oldVersions = keyVersions;
+            allocateKeys(keys.length * 2);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int to = slot(oldKeys[i]);
+                    keys[to] = oldKeys[i];
+                    keyPrices[to] = oldPrices[i];
+                    keyVersions[to] = oldVersions[i];
+                }
+            }
+        }
+    }
+
+    private void allocateKeys(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        keyPrices = new double[capacity];
+        keyVersions = new long[capacity];
+    }
+
+    private void clear(int expected) {
+        int blockCapacity = expected / BUILD_FILL + 4;
+        blockIds = new long[blockCapacity][];
+        blockPrices = new double[blockCapacity][];
+        blockSizes = new int[blockCapacity];
+        blocks = 0;
+        size = 0;
+        allocateKeys(Integer.highestOneBit(Math.max(16, expected) * 4 - 1));
+        keyCount = 0;
+        tombstones = 0;
+    }
+
+    @Override
+    public void start() {
+        rebuild();
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // built before the web server starts taking requests
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 2048;
+    }
+
+    private record RecordedWrite(long id, double price, long version, boolean deleted) {
+    }
+}
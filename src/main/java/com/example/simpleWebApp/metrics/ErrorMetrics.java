@@ -0,0 +1,69 @@
+package com.example.simpleWebApp.metrics;
+
+import com.example.simpleWebApp.enums.ErrorCode;
+import com.example.simpleWebApp.model.GenericResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+// Every error response the services hand out is built here, so each one is counted as product.errors{code=...}
+// and unexpected exceptions are logged instead of disappearing into a GenericResponse.
+// Counters are registered up front, incrementing one is a map lookup with no registry access on the hot path.
+@Component
+public class ErrorMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger(ErrorMetrics.class);
+
+    // Errors whose message never varies, shared by every request that hits them. Scrapers asking for ids that do
+    // not exist are the most common error by far, and this way answering them allocates nothing.
+    private static final GenericResponse<?> NOT_FOUND = new GenericResponse<>("Product not found", ErrorCode.PRODUCT_NOT_FOUND);
+    private static final GenericResponse<?> VERSION_CONFLICT = new GenericResponse<>("Product was modified concurrently", ErrorCode.PRODUCT_VERSION_CONFLICT);
+
+    private final Map<ErrorCode, Counter> counters = new EnumMap<>(ErrorCode.class);
+
+    @Autowired
+    public ErrorMetrics(MeterRegistry meterRegistry) {
+        for (ErrorCode errorCode : ErrorCode.values()) {
+            counters.put(errorCode, Counter.builder("product.errors")
+                    .description("Error responses by error code")
+                    .tag("code", errorCode.name())
+                    .register(meterRegistry));
+        }
+    }
+
+    public <T> GenericResponse<T> error(String errorMessage, ErrorCode errorCode) {
+        increment(errorCode);
+        return new GenericResponse<>(errorMessage, errorCode);
+    }
+
+    public <T> GenericResponse<T> error(String errorMessage, ErrorCode errorCode, Throwable cause) {
+        log.error(errorMessage, cause);
+        return error(errorMessage, errorCode);
+    }
+
+    public <T> GenericResponse<T> notFound() {
+        return shared(NOT_FOUND);
+    }
+
+    public <T> GenericResponse<T> versionConflict() {
+        return shared(VERSION_CONFLICT);
+    }
+
+    // For errors reported inside a successful response, like a failed item of a batch
+    public void increment(ErrorCode errorCode) {
+        counters.get(errorCode).increment();
+    }
+
+    // Safe for any T, an error response has no data and cannot be changed
+    @SuppressWarnings("unchecked")
+    private <T> GenericResponse<T> shared(GenericResponse<?> response) {
+        increment(response.getErrorCode());
+        return (GenericResponse<T>) response;
+    }
+}
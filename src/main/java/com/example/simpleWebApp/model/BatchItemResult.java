@@ -0,0 +1,41 @@
+package com.example.simpleWebApp.model;
+
+import com.example.simpleWebApp.enums.ErrorCode;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+//outcome of one element of a batch request, index is its position in the request array
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchItemResult {
+    private int index;
+    private Long id;
+    private String errorMessage;
+    private ErrorCode errorCode;
+
+    public BatchItemResult(int index, Long id) {
+        this.index = index;
+        this.id = id;
+    }
+
+    public BatchItemResult(int index, Long id, String errorMessage, ErrorCode errorCode) {
+        this.index = index;
+        this.id = id;
+        this.errorMessage = errorMessage;
+        this.errorCode = errorCode;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public ErrorCode getErrorCode() {
+        return errorCode;
+    }
+}
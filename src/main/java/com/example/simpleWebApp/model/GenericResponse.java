@@ -1,20 +1,31 @@
 package com.example.simpleWebApp.model;
 
 import com.example.simpleWebApp.enums.ErrorCode;
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 
 //to discard non-null fields while sending the data
+// Immutable, so fixed error responses can be one shared instance instead of one per request
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class GenericResponse<T> {
-    private T data;
-    private String errorMessage;
-    private ErrorCode errorCode;
+    private final T data;
+    private final String errorMessage;
+    private final ErrorCode errorCode;
 
     public GenericResponse(T data) {
-        this.data = data;
+        this(data, null, null);
     }
 
     public GenericResponse(String errorMessage, ErrorCode errorCode) {
+        this(null, errorMessage, errorCode);
+    }
+
+    @JsonCreator
+    private GenericResponse(@JsonProperty("data") T data,
+                            @JsonProperty("errorMessage") String errorMessage,
+                            @JsonProperty("errorCode") ErrorCode errorCode) {
+        this.data = data;
         this.errorMessage = errorMessage;
         this.errorCode = errorCode;
     }
@@ -23,23 +34,11 @@ public class GenericResponse<T> {
         return data;
     }
 
-    public void setData(T data) {
-        this.data = data;
-    }
-
     public String getErrorMessage() {
         return errorMessage;
     }
 
-    public void setErrorMessage(String errorMessage) {
-        this.errorMessage = errorMessage;
-    }
-
     public ErrorCode getErrorCode() {
         return errorCode;
     }
-
-    public void setErrorCode(ErrorCode errorCode) {
-        this.errorCode = errorCode;
-    }
 }
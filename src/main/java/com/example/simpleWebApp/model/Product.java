@@ -1,21 +1,45 @@
 package com.example.simpleWebApp.model;
 
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
 
 @Entity
+// second-level cache: READ_WRITE soft-locks an entry while a transaction changes it, so no reader sees a half-committed row.
+// The JPQL updates and deletes clear the whole region, which stays correct at the price of a colder cache.
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "product")
+// dirty-checked updates (the batch endpoint) only write the columns that actually changed
+@DynamicUpdate
+// back the search endpoint: name prefix and price range lookups, and sorting by either column
+@Table(indexes = {
+        @Index(name = "idx_product_name", columnList = "name"),
+        @Index(name = "idx_product_price", columnList = "price")
+})
 public class Product {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // pooled sequence: Hibernate reserves 50 ids per round trip and can batch the inserts
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_seq")
+    @SequenceGenerator(name = "product_seq", sequenceName = "product_seq", allocationSize = 50)
     private Long id;
 
     private String name;
     private String description;
     private double price;
 
+    // optimistic lock: bumped by every update, a client sending a stale value gets a conflict
+    @Version
+    private Long version;
 
     public Long getId() {
         return id;
@@ -48,4 +72,12 @@ public class Product {
     public void setPrice(double price) {
         this.price = price;
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
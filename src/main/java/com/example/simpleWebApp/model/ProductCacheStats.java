@@ -0,0 +1,40 @@
+package com.example.simpleWebApp.model;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+//snapshot of the product cache counters, used to size the cache
+public class ProductCacheStats {
+    private long hitCount;
+    private long missCount;
+    private double hitRate;
+    private long evictionCount;
+    private long estimatedSize;
+
+    public ProductCacheStats(CacheStats stats, long estimatedSize) {
+        this.hitCount = stats.hitCount();
+        this.missCount = stats.missCount();
+        this.hitRate = stats.hitRate();
+        this.evictionCount = stats.evictionCount();
+        this.estimatedSize = estimatedSize;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public double getHitRate() {
+        return hitRate;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getEstimatedSize() {
+        return estimatedSize;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.simpleWebApp.model;
+
+import com.example.simpleWebApp.enums.ChangeType;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// One entry of the change feed. product is the state after the write as the service knew it, absent for deletes;
+// for an update without a version it carries only the fields the client sent. epoch and offset together are its
+// position in the feed, "<epoch>-<offset>" is what a client resumes from.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ProductChange {
+    private final long epoch;
+    private final long offset;
+    private final ChangeType type;
+    private final Long id;
+    private final Product product;
+    private final long timestamp;
+
+    public ProductChange(long epoch, long offset, ChangeType type, Long id, Product product, long timestamp) {
+        this.epoch = epoch;
+        this.offset = offset;
+        this.type = type;
+        this.id = id;
+        this.product = product;
+        this.timestamp = timestamp;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public ChangeType getType() {
+        return type;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
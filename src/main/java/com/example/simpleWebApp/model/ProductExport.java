@@ -0,0 +1,28 @@
+package com.example.simpleWebApp.model;
+
+import java.nio.file.Path;
+
+// one gzipped JSON snapshot of the whole catalog, version is the product list version it was taken at
+public class ProductExport {
+    private final Path file;
+    private final long size;
+    private final String version;
+
+    public ProductExport(Path file, long size, String version) {
+        this.file = file;
+        this.size = size;
+        this.version = version;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+}
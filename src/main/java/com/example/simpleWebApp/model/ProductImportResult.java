@@ -0,0 +1,42 @@
+package com.example.simpleWebApp.model;
+
+// outcome of one import run; resumedFrom is the byte offset a previous, interrupted run had committed up to
+public class ProductImportResult {
+    private final long importedRows;
+    private final long failedRows;
+    private final long resumedFrom;
+    private final long bytes;
+    private final long elapsedMillis;
+
+    public ProductImportResult(long importedRows, long failedRows, long resumedFrom, long bytes, long elapsedMillis) {
+        this.importedRows = importedRows;
+        this.failedRows = failedRows;
+        this.resumedFrom = resumedFrom;
+        this.bytes = bytes;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getImportedRows() {
+        return importedRows;
+    }
+
+    public long getFailedRows() {
+        return failedRows;
+    }
+
+    public long getResumedFrom() {
+        return resumedFrom;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public long getRowsPerSecond() {
+        return elapsedMillis == 0 ? importedRows : importedRows * 1000 / elapsedMillis;
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.simpleWebApp.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+//one keyset page of products; next is absent on the last page
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ProductPage {
+    private List<Product> items;
+    private String next;
+
+    public ProductPage(List<Product> items, String next) {
+        this.items = items;
+        this.next = next;
+    }
+
+    public List<Product> getItems() {
+        return items;
+    }
+
+    public void setItems(List<Product> items) {
+        this.items = items;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.simpleWebApp.model;
+
+import java.util.Map;
+
+//a validated JSON Merge Patch: only the columns present in the request, plus the optional expected version
+public class ProductPatch {
+    private final Map<String, Object> changes;
+    private final Long version;
+
+    public ProductPatch(Map<String, Object> changes, Long version) {
+        this.changes = changes;
+        this.version = version;
+    }
+
+    public Map<String, Object> getChanges() {
+        return changes;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+}
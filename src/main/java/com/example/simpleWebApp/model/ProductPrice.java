@@ -0,0 +1,20 @@
+package com.example.simpleWebApp.model;
+
+//price list row: id and price only, what the price index holds
+public class ProductPrice {
+    private Long id;
+    private double price;
+
+    public ProductPrice(Long id, double price) {
+        this.id = id;
+        this.price = price;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.simpleWebApp.model;
+
+//search result row: only the columns a result list needs, read straight into this class without loading entities
+public class ProductSummary {
+    private Long id;
+    private String name;
+    private double price;
+
+    public ProductSummary(Long id, String name, double price) {
+        this.id = id;
+        this.name = name;
+        this.price = price;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.simpleWebApp.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// Token bucket per client, kept as a single "theoretical arrival time" (GCRA): every granted request pushes it
+// one emission interval into the future, and a request is refused while it is more than the burst ahead of now.
+// That is the whole bucket state, so taking a token is one CAS on the client's own AtomicLong. The buckets live in
+// a bounded Caffeine cache, clients only contend when they are the same client, there is no lock anywhere.
+public class ClientRateLimiter {
+
+    private final Cache<String, AtomicLong> buckets;
+    private final long emissionInterval;
+    private final long burstTolerance;
+    private final LongSupplier nanoClock;
+
+    public ClientRateLimiter(double requestsPerSecond, int burst, long maxClients, LongSupplier nanoClock) {
+        if (requestsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate and burst must be positive");
+        }
+        this.emissionInterval = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        this.burstTolerance = emissionInterval * (burst - 1);
+        this.nanoClock = nanoClock;
+        // an idle bucket is full again after one burst worth of intervals, dropping it loses nothing
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(Duration.ofNanos(Math.max(emissionInterval + burstTolerance, 1_000_000_000L)))
+                .build();
+    }
+
+    // 0 when the request may go ahead, otherwise the nanos until the client gets its next token
+    public long tryAcquire(String client) {
+        AtomicLong arrival = buckets.get(client, key -> new AtomicLong(Long.MIN_VALUE));
+        while (true) {
+            long now = nanoClock.getAsLong();
+            long current = arrival.get();
+            // a new or long idle client starts from now, which is a full bucket
+            long next = Math.max(current, now) + emissionInterval;
+            long ahead = next - now - emissionInterval;
+            if (ahead > burstTolerance) {
+                return ahead - burstTolerance;
+            }
+            if (arrival.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    public long trackedClients() {
+        return buckets.estimatedSize();
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.simpleWebApp.ratelimit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.LongSupplier;
+
+// Adaptive cap on requests in flight (AIMD). Every request that finishes under the target latency raises the limit
+// by 1/limit, about one per limit's worth of requests; one that is slower, or failed with a 5xx, multiplies it by
+// the backoff ratio, but only if it started after the last decrease. Everything already in flight when the limit went
+// down ran under the old limit and says nothing about the new one, so one hiccup that slows every request in flight
+// costs one decrease, and a slowdown that lasts costs about one per target latency. When the database or the pool
+// falls behind the limit shrinks until latency recovers, and the requests above it are refused straight away instead
+// of queueing for a Tomcat thread and a connection.
+public class ConcurrencyLimiter {
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // the limit is a double kept as raw long bits so it can be updated with CAS
+    private final AtomicLong limitBits;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetLatencyNanos;
+    private final double backoffRatio;
+    private final LongSupplier nanoClock;
+    // when the limit last went down
+    private final AtomicLong lastDecrease;
+
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long targetLatencyNanos, double backoffRatio,
+                              LongSupplier nanoClock) {
+        if (minLimit < 1 || minLimit > maxLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= min <= initial <= max");
+        }
+        this.limitBits = new AtomicLong(Double.doubleToRawLongBits(initialLimit));
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetLatencyNanos = targetLatencyNanos;
+        this.backoffRatio = backoffRatio;
+        this.nanoClock = nanoClock;
+        this.lastDecrease = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= getLimit()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // Gives the slot back and feeds the outcome into the limit
+    public void release(long latencyNanos, boolean failed) {
+        inFlight.decrementAndGet();
+        if (!failed && latencyNanos <= targetLatencyNanos) {
+            update(limit -> limit + 1 / limit);
+            return;
+        }
+        long now = nanoClock.getAsLong();
+        long decreased = lastDecrease.get();
+        // only the one request that moves lastDecrease decreases the limit
+        if (now - latencyNanos - decreased >= 0 && lastDecrease.compareAndSet(decreased, now)) {
+            update(limit -> limit * backoffRatio);
+        }
+    }
+
+    private void update(DoubleUnaryOperator function) {
+        limitBits.getAndUpdate(bits -> {
+            double next = function.applyAsDouble(Double.longBitsToDouble(bits));
+            return Double.doubleToRawLongBits(Math.max(minLimit, Math.min(maxLimit, next)));
+        });
+    }
+
+    // Gives the slot back without a latency sample, for requests whose duration says nothing about load (streams)
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    public int getLimit() {
+        return (int) Double.longBitsToDouble(limitBits.get());
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.simpleWebApp.ratelimit;
+
+import com.example.simpleWebApp.enums.ErrorCode;
+import com.example.simpleWebApp.metrics.ErrorMetrics;
+import com.example.simpleWebApp.model.GenericResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Turns excess work away before it reaches a controller, a Tomcat worker or a pooled connection.
+// First the client's token bucket (429 with Retry-After), then the adaptive concurrency limit (503).
+// Either limiter may be null when it is switched off.
+public class LoadSheddingFilter extends OncePerRequestFilter {
+
+    static final String API_KEY_HEADER = "X-API-Key";
+    // The change feed is open for as long as the client listens and an import runs as long as its file takes:
+    // neither length says anything about load, and they would starve the limit of slots
+    static final Set<String> UNLIMITED_PATHS = Set.of("/api/products/changes", "/api/products/import");
+    // Batches hold a slot while they run, but one partner's large batch taking longer than the target latency is not
+    // the server falling behind; only their failures feed the limit
+    static final Set<String> UNSAMPLED_PATHS = Set.of("/api/products/batch");
+
+    private final ClientRateLimiter rateLimiter;
+    private final Set<String> apiKeys;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final ErrorMetrics errorMetrics;
+    private final ObjectMapper objectMapper;
+    private final Counter rateLimited;
+    private final Counter overloaded;
+
+    public LoadSheddingFilter(ClientRateLimiter rateLimiter, Set<String> apiKeys, ConcurrencyLimiter concurrencyLimiter,
+                              ErrorMetrics errorMetrics, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.rateLimiter = rateLimiter;
+        this.apiKeys = Set.copyOf(apiKeys);
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.errorMetrics = errorMetrics;
+        this.objectMapper = objectMapper;
+        this.rateLimited = shedCounter(meterRegistry, "rate-limit");
+        this.overloaded = shedCounter(meterRegistry, "concurrency-limit");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (rateLimiter != null) {
+            long waitNanos = rateLimiter.tryAcquire(clientKey(request));
+            if (waitNanos > 0) {
+                rateLimited.increment();
+                response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, Math.ceilDiv(waitNanos, TimeUnit.SECONDS.toNanos(1)))));
+                reject(response, errorMetrics.error("Too many requests", ErrorCode.TOO_MANY_REQUESTS));
+                return;
+            }
+        }
+        if (concurrencyLimiter == null || UNLIMITED_PATHS.contains(request.getRequestURI())) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        if (!concurrencyLimiter.tryAcquire()) {
+            overloaded.increment();
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            reject(response, errorMetrics.error("Server is overloaded, retry later", ErrorCode.SERVICE_UNAVAILABLE));
+            return;
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            filterChain.doFilter(request, response);
+            failed = false;
+        } finally {
+            if (!failed && request.isAsyncStarted()) {
+                // streams hold their slot until the last byte, but their length is not a load signal
+                request.getAsyncContext().addListener(new ReleaseOnComplete());
+            } else {
+                boolean serverError = failed || response.getStatus() >= 500;
+                if (!UNSAMPLED_PATHS.contains(request.getRequestURI())) {
+                    concurrencyLimiter.release(System.nanoTime() - start, serverError);
+                } else if (serverError) {
+                    concurrencyLimiter.release(0, true);
+                } else {
+                    concurrencyLimiter.release();
+                }
+            }
+        }
+    }
+
+    // A configured API key identifies a partner behind any number of addresses. Any other key is ignored and the
+    // request counts against its peer address, so rotating made-up keys neither escapes the bucket nor fills the
+    // bucket cache with new clients that evict everyone else's. The address is the client's behind trusted proxies,
+    // server.forward-headers-strategy has already applied their X-Forwarded-For.
+    private String clientKey(HttpServletRequest request) {
+        String apiKey = request.getHeader(API_KEY_HEADER);
+        return apiKey != null && apiKeys.contains(apiKey) ? "key:" + apiKey : "ip:" + request.getRemoteAddr();
+    }
+
+    private void reject(HttpServletResponse response, GenericResponse<?> body) throws IOException {
+        response.setStatus(body.getErrorCode().getHttpStatus());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), body);
+    }
+
+    private static Counter shedCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("product.requests.shed")
+                .description("Requests refused before reaching a controller")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    // complete() follows a timeout or an error too, so this is the only place the slot is given back
+    private class ReleaseOnComplete implements AsyncListener {
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            concurrencyLimiter.release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -1,9 +1,85 @@
 package com.example.simpleWebApp.repository;
 
 import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.model.ProductPrice;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.jpa.SpecHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Reads run in read-only transactions, which the read-replicas profile routes to a replica; writes opt back in below
 @Repository
-public interface ProductRepository extends JpaRepository<Product, Long> {
+@Transactional(readOnly = true)
+public interface ProductRepository extends JpaRepository<Product, Long>, ProductRepositoryCustom {
+
+    // Keyset page: the next rows after the last id the client has seen.
+    // Query cache: results are dropped as soon as any product row changes. A cached result only holds ids, so it is
+    // only worth keeping while every row it names still fits in the product region; a page is at most
+    // products.page.max-size rows, far below that region's size. The unbounded findAll is not cached for that reason,
+    // a hit on it would load every evicted row one SELECT at a time.
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    List<Product> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    // Whole table as a cursor-backed stream, must be consumed inside a transaction.
+    // Bypasses the second-level cache so a full export does not evict the hot entries.
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = SpecHints.HINT_SPEC_CACHE_STORE_MODE, value = "BYPASS")
+    })
+    @Query("select p from Product p order by p.id")
+    Stream<Product> streamAllByOrderByIdAsc();
+
+    // Cheapest first, ties broken by id: the same order the price index keeps
+    @Query("select new com.example.simpleWebApp.model.ProductPrice(p.id, p.price) from Product p " +
+            "where p.price >= :minPrice and p.price <= :maxPrice order by p.price, p.id")
+    List<ProductPrice> findPrices(@Param("minPrice") double minPrice, @Param("maxPrice") double maxPrice, Limit limit);
+
+    // id, price and version of every product in the price index's order, what it loads on a rebuild
+    @Query("select p.id, p.price, p.version from Product p order by p.price, p.id")
+    List<Object[]> findPriceIndexEntries();
+
+    @Query("select p.id from Product p where p.id in :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    // Single UPDATE statement, no prior SELECT. A null version skips the optimistic lock check.
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Product p set p.name = :name, p.description = :description, p.price = :price, p.version = p.version + 1 " +
+            "where p.id = :id and (:version is null or p.version = :version)")
+    int updateDetails(@Param("id") Long id, @Param("name") String name, @Param("description") String description,
+                      @Param("price") double price, @Param("version") Long version);
+
+    // updateDetails that also says which version the row now has, null when no row was updated.
+    // Without a client version the row is read back in the same transaction, which still holds its lock.
+    @Transactional
+    default Long updateDetailsReturningVersion(Long id, String name, String description, double price, Long version) {
+        if (updateDetails(id, name, description, price, version) == 0) {
+            return null;
+        }
+        return version != null ? version + 1 : findVersionById(id);
+    }
+
+    @Query("select p.version from Product p where p.id = :id")
+    Long findVersionById(@Param("id") Long id);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Product p where p.id = :id")
+    int deleteProductById(@Param("id") Long id);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Product p where p.id = :id and p.version = :version")
+    int deleteProductByIdAndVersion(@Param("id") Long id, @Param("version") Long version);
 }
@@ -0,0 +1,14 @@
+package com.example.simpleWebApp.repository;
+
+import com.example.simpleWebApp.model.ProductSummary;
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+import java.util.Map;
+
+public interface ProductRepositoryCustom {
+
+    int patchProduct(Long id, Map<String, Object> changes, Long version);
+
+    List<ProductSummary> searchProducts(String namePrefix, String keyword, Double minPrice, Double maxPrice, Sort sort, int limit);
+}
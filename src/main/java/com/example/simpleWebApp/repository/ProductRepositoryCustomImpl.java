@@ -0,0 +1,81 @@
+package com.example.simpleWebApp.repository;
+
+import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.model.ProductSummary;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // UPDATE that only sets the columns in the patch, so a price change never rewrites the description
+    @Override
+    @Transactional
+    public int patchProduct(Long id, Map<String, Object> changes, Long version) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Product> update = builder.createCriteriaUpdate(Product.class);
+        Root<Product> product = update.from(Product.class);
+        changes.forEach(update::set);
+        update.set(product.<Long>get("version"), builder.sum(product.<Long>get("version"), 1L));
+        Predicate where = builder.equal(product.get("id"), id);
+        if (version != null) {
+            where = builder.and(where, builder.equal(product.get("version"), version));
+        }
+        update.where(where);
+        // same as @Modifying(flushAutomatically = true, clearAutomatically = true) on the JPQL updates
+        entityManager.flush();
+        int updated = entityManager.createQuery(update).executeUpdate();
+        entityManager.clear();
+        return updated;
+    }
+
+    // Every filter is optional. Name prefix and price range can use their indexes, the description
+    // keyword is a contains match and only narrows what the other predicates already selected.
+    @Override
+    @Transactional(readOnly = true)
+    public List<ProductSummary> searchProducts(String namePrefix, String keyword, Double minPrice, Double maxPrice, Sort sort, int limit) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<ProductSummary> query = builder.createQuery(ProductSummary.class);
+        Root<Product> product = query.from(Product.class);
+        query.select(builder.construct(ProductSummary.class, product.get("id"), product.get("name"), product.get("price")));
+
+        List<Predicate> where = new ArrayList<>();
+        if (namePrefix != null) {
+            where.add(builder.like(product.get("name"), escapeLike(namePrefix) + "%", '\\'));
+        }
+        if (keyword != null) {
+            where.add(builder.like(builder.lower(product.get("description")), "%" + escapeLike(keyword.toLowerCase()) + "%", '\\'));
+        }
+        if (minPrice != null) {
+            where.add(builder.greaterThanOrEqualTo(product.get("price"), minPrice));
+        }
+        if (maxPrice != null) {
+            where.add(builder.lessThanOrEqualTo(product.get("price"), maxPrice));
+        }
+        query.where(where.toArray(new Predicate[0]));
+        query.orderBy(QueryUtils.toOrders(sort, product, builder));
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .setHint(HibernateHints.HINT_CACHEABLE, true)
+                .getResultList();
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
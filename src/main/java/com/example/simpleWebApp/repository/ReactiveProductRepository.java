@@ -0,0 +1,130 @@
+package com.example.simpleWebApp.repository;
+
+import com.example.simpleWebApp.model.Product;
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+// R2DBC view of the same product table, used by the reactive profile.
+// Plain SQL over DatabaseClient rather than a Spring Data interface: Product is a JPA entity,
+// and a second repository module would fight JPA over it during repository scanning.
+@Repository
+@Profile("reactive")
+public class ReactiveProductRepository {
+
+    private static final String COLUMNS = "id, name, description, price, version";
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    public Mono<Product> findProductById(Long id) {
+        return databaseClient.sql("select " + COLUMNS + " from product where id = :id")
+                .bind("id", id)
+                .map(ReactiveProductRepository::toProduct)
+                .one();
+    }
+
+    public Flux<Product> findPageAfter(long afterId, int limit) {
+        return databaseClient.sql("select " + COLUMNS + " from product where id > :afterId order by id limit :limit")
+                .bind("afterId", afterId)
+                .bind("limit", limit)
+                .map(ReactiveProductRepository::toProduct)
+                .all();
+    }
+
+    // Rows are pulled from the driver only as fast as the subscriber requests them
+    public Flux<Product> streamAll() {
+        return databaseClient.sql("select " + COLUMNS + " from product order by id")
+                .map(ReactiveProductRepository::toProduct)
+                .all();
+    }
+
+    // With the pooled-lo optimizer Hibernate only uses ids from blocks that start at values it fetched itself,
+    // so taking a single value here can never collide with an id it hands out
+    public Mono<Long> nextId() {
+        return databaseClient.sql("select next value for product_seq")
+                .map(row -> row.get(0, Long.class))
+                .one();
+    }
+
+    public Mono<Long> insertProduct(Product product) {
+        return bindDetails(databaseClient.sql("insert into product (" + COLUMNS + ") values (:id, :name, :description, :price, 0)"), product)
+                .bind("id", product.getId())
+                .fetch()
+                .rowsUpdated();
+    }
+
+    // Same statement as ProductRepository.updateDetails, version check only when the client sent one.
+    // H2's FINAL TABLE hands back the version the update wrote; empty when no row was updated.
+    public Mono<Long> updateProduct(Long id, Product productDetails) {
+        String sql = "select version from final table (update product set name = :name, description = :description, "
+                + "price = :price, version = version + 1 where id = :id";
+        if (productDetails.getVersion() == null) {
+            return bindDetails(databaseClient.sql(sql + ")"), productDetails)
+                    .bind("id", id)
+                    .map(row -> row.get(0, Long.class))
+                    .one();
+        }
+        return bindDetails(databaseClient.sql(sql + " and version = :version)"), productDetails)
+                .bind("id", id)
+                .bind("version", productDetails.getVersion())
+                .map(row -> row.get(0, Long.class))
+                .one();
+    }
+
+    // Column names come from ProductService.parsePatch, which only lets known fields through
+    public Mono<Long> patchProduct(Long id, Map<String, Object> changes, Long version) {
+        StringBuilder sql = new StringBuilder("update product set ");
+        changes.keySet().forEach(column -> sql.append(column).append(" = :").append(column).append(", "));
+        sql.append("version = version + 1 where id = :id");
+        if (version != null) {
+            sql.append(" and version = :version");
+        }
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString()).bind("id", id);
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            spec = change.getValue() == null
+                    ? spec.bindNull(change.getKey(), String.class)
+                    : spec.bind(change.getKey(), change.getValue());
+        }
+        if (version != null) {
+            spec = spec.bind("version", version);
+        }
+        return spec.fetch().rowsUpdated();
+    }
+
+    public Mono<Boolean> existsById(Long id) {
+        return databaseClient.sql("select count(*) from product where id = :id")
+                .bind("id", id)
+                .map(row -> row.get(0, Long.class) > 0)
+                .one();
+    }
+
+    public Mono<Long> deleteProductById(Long id) {
+        return databaseClient.sql("delete from product where id = :id")
+                .bind("id", id)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindDetails(DatabaseClient.GenericExecuteSpec spec, Product product) {
+        spec = product.getName() == null ? spec.bindNull("name", String.class) : spec.bind("name", product.getName());
+        spec = product.getDescription() == null ? spec.bindNull("description", String.class) : spec.bind("description", product.getDescription());
+        return spec.bind("price", product.getPrice());
+    }
+
+    private static Product toProduct(Readable row) {
+        Product product = new Product();
+        product.setId(row.get("id", Long.class));
+        product.setName(row.get("name", String.class));
+        product.setDescription(row.get("description", String.class));
+        product.setPrice(row.get("price", Double.class));
+        product.setVersion(row.get("version", Long.class));
+        return product;
+    }
+}
@@ -0,0 +1,325 @@
+package com.example.simpleWebApp.service;
+
+import com.example.simpleWebApp.cache.ProductCache;
+import com.example.simpleWebApp.changes.ProductChangeFeed;
+import com.example.simpleWebApp.enums.ChangeType;
+import com.example.simpleWebApp.enums.ErrorCode;
+import com.example.simpleWebApp.index.ProductPriceIndex;
+import com.example.simpleWebApp.model.BatchItemResult;
+import com.example.simpleWebApp.metrics.ErrorMetrics;
+import com.example.simpleWebApp.model.GenericResponse;
+import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.repository.ProductRepository;
+import com.example.simpleWebApp.writebehind.ProductWriteBehind;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+// Bulk create/update/delete. Every chunk of products.batch.chunk-size items is one transaction,
+// flushed as JDBC batches. When a chunk fails it is rolled back and replayed item by item,
+// so one bad row only fails itself.
+@Timed(value = "product.batch", histogram = true)
+@Service
+public class ProductBatchService {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductBatchService.class);
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private ProductChangeFeed productChangeFeed;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ErrorMetrics errorMetrics;
+
+    // only under the write-behind profile, its accepted writes are flushed before a batch updates or deletes rows
+    @Autowired(required = false)
+    private ProductWriteBehind productWriteBehind;
+
+    // only with products.price-index.enabled
+    @Autowired(required = false)
+    private ProductPriceIndex productPriceIndex;
+
+    @Value("${products.batch.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${products.batch.max-items:10000}")
+    private int maxItems;
+
+    public GenericResponse<List<BatchItemResult>> createProducts(List<Product> products) {
+        if (!isValidSize(products)) {
+            return errorMetrics.error(batchSizeMessage(), ErrorCode.BAD_REQUEST);
+        }
+        List<BatchItemResult> results = new ArrayList<>(products.size());
+        for (int start = 0; start < products.size(); start += chunkSize) {
+            List<Product> chunk = products.subList(start, Math.min(start + chunkSize, products.size()));
+            try {
+                chunk.forEach(ProductBatchService::clearIdentity);
+                transactionTemplate.executeWithoutResult(status -> productRepository.saveAll(chunk));
+            } catch (Exception e) {
+                log.warn("Create chunk at {} failed, retrying its items one by one", start, e);
+                for (int i = 0; i < chunk.size(); i++) {
+                    results.add(createOne(start + i, chunk.get(i)));
+                }
+                continue;
+            }
+            // committed: from here on nothing may send the chunk back to the item by item replay
+            for (int i = 0; i < chunk.size(); i++) {
+                Product product = chunk.get(i);
+                afterCommit(ChangeType.CREATED, product.getId(), product);
+                results.add(new BatchItemResult(start + i, product.getId()));
+            }
+        }
+        return batchResponse(results);
+    }
+
+    public GenericResponse<List<BatchItemResult>> updateProducts(List<Product> products) {
+        if (!isValidSize(products)) {
+            return errorMetrics.error(batchSizeMessage(), ErrorCode.BAD_REQUEST);
+        }
+        return writeNow(() -> updateAll(products));
+    }
+
+    private GenericResponse<List<BatchItemResult>> updateAll(List<Product> products) {
+        Set<Integer> duplicates = duplicates(products.stream().map(Product::getId).toList());
+        List<BatchItemResult> results = new ArrayList<>(products.size());
+        for (int start = 0; start < products.size(); start += chunkSize) {
+            List<Product> chunk = products.subList(start, Math.min(start + chunkSize, products.size()));
+            int offset = start;
+            long[] versions = new long[chunk.size()];
+            List<BatchItemResult> chunkResults;
+            try {
+                chunkResults = transactionTemplate.execute(status -> updateChunk(chunk, offset, versions, duplicates));
+            } catch (Exception e) {
+                log.warn("Update chunk at {} failed, retrying its items one by one", start, e);
+                for (int i = 0; i < chunk.size(); i++) {
+                    results.add(duplicates.contains(start + i)
+                            ? duplicate(start + i, chunk.get(i).getId())
+                            : updateOne(start + i, chunk.get(i)));
+                }
+                continue;
+            }
+            // invalidate only after the commit, otherwise a reader could re-cache the old row
+            for (BatchItemResult result : chunkResults) {
+                if (result.getErrorCode() == null) {
+                    Product details = chunk.get(result.getIndex() - offset);
+                    // set only now: a chunk that failed is retried item by item against the client's version
+                    details.setVersion(versions[result.getIndex() - offset]);
+                    afterCommit(ChangeType.UPDATED, result.getId(), details);
+                }
+            }
+            results.addAll(chunkResults);
+        }
+        return batchResponse(results);
+    }
+
+    public GenericResponse<List<BatchItemResult>> deleteProducts(List<Long> ids) {
+        if (!isValidSize(ids)) {
+            return errorMetrics.error(batchSizeMessage(), ErrorCode.BAD_REQUEST);
+        }
+        try {
+            return writeNow(() -> deleteAll(ids));
+        } catch (Exception e) {
+            return errorMetrics.error("Error deleting products", ErrorCode.PRODUCT_DELETION_FAILED, e);
+        }
+    }
+
+    private GenericResponse<List<BatchItemResult>> deleteAll(List<Long> ids) {
+        Set<Integer> duplicates = duplicates(ids);
+        List<BatchItemResult> results = new ArrayList<>(ids.size());
+        for (int start = 0; start < ids.size(); start += chunkSize) {
+            List<Long> chunk = ids.subList(start, Math.min(start + chunkSize, ids.size()));
+            Set<Long> deleted = transactionTemplate.execute(status -> {
+                List<Long> existing = productRepository.findExistingIds(chunk);
+                productRepository.deleteAllByIdInBatch(existing);
+                return new HashSet<>(existing);
+            });
+            for (int i = 0; i < chunk.size(); i++) {
+                Long id = chunk.get(i);
+                if (duplicates.contains(start + i)) {
+                    results.add(duplicate(start + i, id));
+                } else if (deleted.contains(id)) {
+                    afterCommit(ChangeType.DELETED, id, null);
+                    results.add(new BatchItemResult(start + i, id));
+                } else {
+                    results.add(new BatchItemResult(start + i, id, "Product not found", ErrorCode.PRODUCT_NOT_FOUND));
+                }
+            }
+        }
+        return batchResponse(results);
+    }
+
+    // Loads the whole chunk with one IN query and lets the commit flush the changes as batched UPDATEs.
+    // versions gets the version each updated row will have after the commit.
+    private List<BatchItemResult> updateChunk(List<Product> chunk, int start, long[] versions, Set<Integer> duplicates) {
+        Map<Long, Product> existing = productRepository.findAllById(chunk.stream()
+                        .map(Product::getId)
+                        .filter(Objects::nonNull)
+                        .toList())
+                .stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        List<BatchItemResult> results = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            Product details = chunk.get(i);
+            Product product = details.getId() == null ? null : existing.get(details.getId());
+            if (details.getId() == null) {
+                results.add(new BatchItemResult(start + i, null, "Product id is required", ErrorCode.BAD_REQUEST));
+            } else if (duplicates.contains(start + i)) {
+                results.add(duplicate(start + i, details.getId()));
+            } else if (product == null) {
+                results.add(new BatchItemResult(start + i, details.getId(), "Product not found", ErrorCode.PRODUCT_NOT_FOUND));
+            } else if (isStale(details, product)) {
+                results.add(new BatchItemResult(start + i, details.getId(), "Product was modified concurrently", ErrorCode.PRODUCT_VERSION_CONFLICT));
+            } else {
+                versions[i] = copyDetails(details, product);
+                results.add(new BatchItemResult(start + i, product.getId()));
+            }
+        }
+        return results;
+    }
+
+    private BatchItemResult createOne(int index, Product product) {
+        try {
+            clearIdentity(product);
+            Product savedProduct = transactionTemplate.execute(status -> productRepository.save(product));
+            afterCommit(ChangeType.CREATED, savedProduct.getId(), savedProduct);
+            return new BatchItemResult(index, savedProduct.getId());
+        } catch (Exception e) {
+            log.error("Error creating product at index {}", index, e);
+            return new BatchItemResult(index, null, "Error creating product", ErrorCode.PRODUCT_CREATION_FAILED);
+        }
+    }
+
+    private BatchItemResult updateOne(int index, Product details) {
+        if (details.getId() == null) {
+            return new BatchItemResult(index, null, "Product id is required", ErrorCode.BAD_REQUEST);
+        }
+        try {
+            long[] version = new long[1];
+            BatchItemResult result = transactionTemplate.execute(status -> productRepository.findById(details.getId())
+                    .map(product -> {
+                        if (isStale(details, product)) {
+                            return new BatchItemResult(index, product.getId(), "Product was modified concurrently", ErrorCode.PRODUCT_VERSION_CONFLICT);
+                        }
+                        version[0] = copyDetails(details, product);
+                        return new BatchItemResult(index, product.getId());
+                    })
+                    .orElseGet(() -> new BatchItemResult(index, details.getId(), "Product not found", ErrorCode.PRODUCT_NOT_FOUND)));
+            productCache.invalidate(details.getId());
+            if (result.getErrorCode() == null) {
+                details.setVersion(version[0]);
+                changed(ChangeType.UPDATED, details.getId(), details);
+            }
+            return result;
+        } catch (Exception e) {
+            log.error("Error updating product {}", details.getId(), e);
+            return new BatchItemResult(index, details.getId(), "Error updating product", ErrorCode.PRODUCT_UPDATE_FAILED);
+        }
+    }
+
+    // Item errors are counted once here, on the final results, not on attempts that were rolled back and replayed
+    private GenericResponse<List<BatchItemResult>> batchResponse(List<BatchItemResult> results) {
+        for (BatchItemResult result : results) {
+            if (result.getErrorCode() != null) {
+                errorMetrics.increment(result.getErrorCode());
+            }
+        }
+        return new GenericResponse<>(results);
+    }
+
+    // Indexes of ids that already came earlier in the request: a row changes once, so it gets one success and one
+    // change event, and the repeats are refused
+    private static Set<Integer> duplicates(List<Long> ids) {
+        Set<Long> seen = new HashSet<>();
+        Set<Integer> duplicates = new HashSet<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (ids.get(i) != null && !seen.add(ids.get(i))) {
+                duplicates.add(i);
+            }
+        }
+        return duplicates;
+    }
+
+    private static BatchItemResult duplicate(int index, Long id) {
+        return new BatchItemResult(index, id, "Product id appears more than once", ErrorCode.BAD_REQUEST);
+    }
+
+    private static void clearIdentity(Product product) {
+        product.setId(null);
+        product.setVersion(null);
+    }
+
+    // The loaded row is managed, so Hibernate would not compare it with the client's version by itself
+    private static boolean isStale(Product details, Product product) {
+        return details.getVersion() != null && !details.getVersion().equals(product.getVersion());
+    }
+
+    // Returns the version the commit gives the row: one more, unless nothing changed and Hibernate skips the UPDATE
+    private static long copyDetails(Product details, Product product) {
+        boolean changed = !Objects.equals(details.getName(), product.getName())
+                || !Objects.equals(details.getDescription(), product.getDescription())
+                || Double.compare(details.getPrice(), product.getPrice()) != 0;
+        product.setName(details.getName());
+        product.setDescription(details.getDescription());
+        product.setPrice(details.getPrice());
+        return changed ? product.getVersion() + 1 : product.getVersion();
+    }
+
+    // Cache, change feed and price index for a committed row. The row is written whatever happens here, so a failure
+    // is logged and the cached copy dropped, the item still succeeded.
+    private void afterCommit(ChangeType type, Long id, Product product) {
+        try {
+            if (type == ChangeType.CREATED) {
+                productCache.put(product);
+            } else {
+                productCache.invalidate(id);
+            }
+            changed(type, id, product);
+        } catch (Exception e) {
+            log.error("Product {} was written but not published", id, e);
+            productCache.invalidate(id);
+        }
+    }
+
+    private void changed(ChangeType type, Long id, Product product) {
+        productChangeFeed.publish(type, id, product);
+        if (productPriceIndex != null) {
+            productPriceIndex.apply(type, id, product);
+        }
+    }
+
+    // Under write-behind a batch runs on top of every accepted write, and no update of any id is accepted until it
+    // has committed, so an accepted update never reuses a version the batch gave the row
+    private <T> T writeNow(Supplier<T> write) {
+        return productWriteBehind == null ? write.get() : productWriteBehind.synchronousAll(write);
+    }
+
+    private boolean isValidSize(List<?> items) {
+        return items != null && !items.isEmpty() && items.size() <= maxItems;
+    }
+
+    private String batchSizeMessage() {
+        return "Batch must contain between 1 and " + maxItems + " items";
+    }
+}
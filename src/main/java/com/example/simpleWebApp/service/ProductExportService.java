@@ -0,0 +1,178 @@
+package com.example.simpleWebApp.service;
+
+import com.example.simpleWebApp.config.ReplicaRoutingDataSource;
+import com.example.simpleWebApp.enums.ErrorCode;
+import com.example.simpleWebApp.metrics.ErrorMetrics;
+import com.example.simpleWebApp.model.GenericResponse;
+import com.example.simpleWebApp.model.ProductExport;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+// Keeps the full-catalog export as a gzipped JSON file ({"data":[...]}, like GET /api/products).
+// A background thread rewrites it when the product list version has moved, at most once per refresh interval,
+// so the export endpoint only ever sends an existing file. Every snapshot gets its own file name: a response
+// that is still being sent keeps reading the file it started with while the next one is written.
+@Service
+public class ProductExportService implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductExportService.class);
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ErrorMetrics errorMetrics;
+
+    // empty: a temporary directory per application instance
+    @Value("${products.export.directory:}")
+    private String directory;
+
+    @Value("${products.export.refresh-interval:5s}")
+    private Duration refreshInterval;
+
+    @Value("${products.export.first-snapshot-timeout:30s}")
+    private Duration firstSnapshotTimeout;
+
+    private final CompletableFuture<ProductExport> first = new CompletableFuture<>();
+    private volatile ProductExport current;
+    private Path exportDirectory;
+    private boolean temporaryDirectory;
+    private ScheduledExecutorService refresher;
+    private volatile boolean running;
+
+    // Only a request right after startup waits, for the first snapshot; it never writes one itself
+    public GenericResponse<ProductExport> getExport() {
+        ProductExport export = current;
+        if (export != null) {
+            return new GenericResponse<>(export);
+        }
+        try {
+            return new GenericResponse<>(first.get(firstSnapshotTimeout.toMillis(), TimeUnit.MILLISECONDS));
+        } catch (TimeoutException e) {
+            return errorMetrics.error("Export is not ready yet", ErrorCode.SERVICE_UNAVAILABLE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return errorMetrics.error("Export is not ready yet", ErrorCode.SERVICE_UNAVAILABLE);
+        } catch (Exception e) {
+            return errorMetrics.error("Error exporting products", ErrorCode.INTERNAL_SERVER_ERROR, e);
+        }
+    }
+
+    void refresh() {
+        // read before the rows, so writes that race the snapshot leave it behind the version and trigger the next one
+        String version = productService.getListVersion();
+        ProductExport previous = current;
+        if (previous != null && previous.getVersion().equals(version)) {
+            return;
+        }
+        // from the primary: a snapshot read from a lagging replica would carry this version and never be redone
+        ReplicaRoutingDataSource.pinToPrimary(true);
+        try {
+            ProductExport export = write(version);
+            current = export;
+            first.complete(export);
+            deleteSnapshotsExcept(export, previous);
+        } catch (Exception e) {
+            log.error("Writing the product export failed", e);
+        } finally {
+            ReplicaRoutingDataSource.pinToPrimary(false);
+        }
+    }
+
+    private ProductExport write(String version) throws IOException {
+        Path file = exportDirectory.resolve("products-" + version + ".json.gz");
+        Path temporary = exportDirectory.resolve(file.getFileName() + ".tmp");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temporary), 64 * 1024);
+             JsonGenerator generator = objectMapper.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("data");
+            productService.streamAllProducts(product -> {
+                try {
+                    generator.writeObject(product);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new ProductExport(file, Files.size(file), version);
+    }
+
+    // The previous snapshot stays for responses that picked it just before the switch
+    private void deleteSnapshotsExcept(ProductExport export, ProductExport previous) throws IOException {
+        try (Stream<Path> files = Files.list(exportDirectory)) {
+            for (Path file : files.toList()) {
+                if (!file.equals(export.getFile()) && (previous == null || !file.equals(previous.getFile()))) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        try {
+            temporaryDirectory = directory.isBlank();
+            exportDirectory = temporaryDirectory
+                    ? Files.createTempDirectory("products-export")
+                    : Files.createDirectories(Path.of(directory));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create the export directory", e);
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("product-export").daemon().factory());
+        refresher.scheduleWithFixedDelay(this::refresh, 0, refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        refresher.shutdownNow();
+        if (temporaryDirectory) {
+            try {
+                refresher.awaitTermination(10, TimeUnit.SECONDS);
+                try (Stream<Path> files = Files.list(exportDirectory)) {
+                    for (Path file : files.toList()) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+                Files.deleteIfExists(exportDirectory);
+            } catch (IOException e) {
+                log.warn("Removing the export directory {} failed", exportDirectory, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -0,0 +1,389 @@
+package com.example.simpleWebApp.service;
+
+import com.example.simpleWebApp.cache.ProductCache;
+import com.example.simpleWebApp.changes.ProductChangeFeed;
+import com.example.simpleWebApp.enums.ChangeType;
+import com.example.simpleWebApp.enums.ErrorCode;
+import com.example.simpleWebApp.enums.ImportFormat;
+import com.example.simpleWebApp.importer.ProductRecordParser;
+import com.example.simpleWebApp.index.ProductPriceIndex;
+import com.example.simpleWebApp.metrics.ErrorMetrics;
+import com.example.simpleWebApp.model.GenericResponse;
+import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.model.ProductImportResult;
+import com.example.simpleWebApp.writebehind.ProductIdAllocator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+// Bulk import of a CSV or NDJSON file. The file is split at newlines into chunks of products.import.chunk-size,
+// each chunk is memory-mapped and parsed on a fork-join pool, and one writer inserts the parsed chunks in file order
+// with JDBC batches, a transaction per chunk. Parsers run at most products.import.queue-capacity chunks ahead of the
+// writer, so memory stays the same whatever the file size. Every chunk's transaction also records the byte offset it
+// ends at in product_import: an import that stops half way resumes there when the same file is imported again.
+// An upload given an uploadId is imported the same way, its checkpoint is kept under that id so sending the same
+// body again after a failure resumes it. An upload without one runs in one transaction and lands whole or not at
+// all; the database holds its undo data until the commit, so it is capped at products.import.max-upload-size.
+@Service
+public class ProductImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductImportService.class);
+
+    private static final String INSERT = "insert into product (id, name, description, price, version) values (?, ?, ?, ?, 0)";
+    private static final String SAVE_CHECKPOINT = "merge into product_import (source, file_size, committed_offset, imported_rows) "
+            + "key (source) values (?, ?, ?, ?)";
+    private static final Pattern UPLOAD_ID = Pattern.compile("[A-Za-z0-9._-]{1,100}");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ProductIdAllocator productIdAllocator;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private ProductChangeFeed productChangeFeed;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ErrorMetrics errorMetrics;
+
+    // only with products.price-index.enabled
+    @Autowired(required = false)
+    private ProductPriceIndex productPriceIndex;
+
+    @Value("${products.import.chunk-size:4MB}")
+    private DataSize chunkSize;
+
+    // 0: one parser per core
+    @Value("${products.import.parallelism:0}")
+    private int parallelism;
+
+    @Value("${products.import.queue-capacity:8}")
+    private int queueCapacity;
+
+    @Value("${products.import.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${products.import.progress-interval:5s}")
+    private Duration progressInterval;
+
+    // empty: the system temporary directory
+    @Value("${products.import.directory:}")
+    private String directory;
+
+    // largest upload imported in one transaction, larger ones need an uploadId
+    @Value("${products.import.max-upload-size:64MB}")
+    private DataSize maxUploadSize;
+
+    // one import at a time, two would only compete for the same database
+    private final ReentrantLock importLock = new ReentrantLock();
+
+    private Counter importedRows;
+    private Counter failedRows;
+
+    @Autowired
+    void registerMetrics(MeterRegistry meterRegistry) {
+        importedRows = Counter.builder("product.import.rows")
+                .description("Rows read by file imports")
+                .tag("result", "imported")
+                .register(meterRegistry);
+        failedRows = Counter.builder("product.import.rows")
+                .description("Rows read by file imports")
+                .tag("result", "invalid")
+                .register(meterRegistry);
+    }
+
+    public GenericResponse<ProductImportResult> importFile(Path file, ImportFormat format) {
+        return importFile(file, source(file), format, false);
+    }
+
+    // source: what the checkpoint is kept under
+    private GenericResponse<ProductImportResult> importFile(Path file, String source, ImportFormat format, boolean atomic) {
+        if (!importLock.tryLock()) {
+            return errorMetrics.error("Another import is running, retry later", ErrorCode.SERVICE_UNAVAILABLE);
+        }
+        try {
+            if (!atomic) {
+                return new GenericResponse<>(runImport(file, source, format, false));
+            }
+            ProductImportResult result = transactionTemplate.execute(status -> {
+                try {
+                    return runImport(file, source, format, true);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (result.getImportedRows() > 0) {
+                imported();
+                if (productPriceIndex != null) {
+                    productPriceIndex.rebuild();
+                }
+            }
+            return new GenericResponse<>(result);
+        } catch (IllegalArgumentException e) {
+            return errorMetrics.error(e.getMessage(), ErrorCode.BAD_REQUEST);
+        } catch (Exception e) {
+            return errorMetrics.error("Error importing products", ErrorCode.PRODUCT_CREATION_FAILED,
+                    e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+        } finally {
+            importLock.unlock();
+        }
+    }
+
+    public GenericResponse<ProductImportResult> importStream(InputStream body, ImportFormat format) {
+        return importStream(body, format, null);
+    }
+
+    // An upload is spooled to a file so it can be mapped. With an uploadId it is committed chunk by chunk like a file
+    // and checkpointed under that id: after a failure the client sends the same body with the same id again and the
+    // import resumes after the last committed chunk, no row lands twice. Without one it is imported in one
+    // transaction, so after a failure nothing of it is in the database and sending it again imports every row once.
+    public GenericResponse<ProductImportResult> importStream(InputStream body, ImportFormat format, String uploadId) {
+        if (uploadId != null && !UPLOAD_ID.matcher(uploadId).matches()) {
+            return errorMetrics.error("uploadId must be 1 to 100 letters, digits, '.', '_' or '-'", ErrorCode.BAD_REQUEST);
+        }
+        Path file = null;
+        try {
+            String suffix = format == ImportFormat.CSV ? ".csv" : ".ndjson";
+            file = directory.isEmpty()
+                    ? Files.createTempFile("product-import-", suffix)
+                    : Files.createTempFile(Files.createDirectories(Path.of(directory)), "product-import-", suffix);
+            if (!spool(body, file, uploadId == null ? maxUploadSize.toBytes() : Long.MAX_VALUE)) {
+                return errorMetrics.error("Uploads over " + maxUploadSize.toBytes() + " bytes need an uploadId",
+                        ErrorCode.BAD_REQUEST);
+            }
+            return uploadId == null
+                    ? importFile(file, source(file), format, true)
+                    : importFile(file, "upload:" + uploadId, format, false);
+        } catch (IOException e) {
+            return errorMetrics.error("Error receiving the import", ErrorCode.BAD_REQUEST, e);
+        } finally {
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    log.warn("Could not delete the spooled import {}", file, e);
+                }
+            }
+        }
+    }
+
+    // Copies the body to the file, false as soon as it is longer than limit
+    private static boolean spool(InputStream body, Path file, long limit) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            long copied = 0;
+            for (int read = body.read(buffer); read >= 0; read = body.read(buffer)) {
+                copied += read;
+                if (copied > limit) {
+                    return false;
+                }
+                out.write(buffer, 0, read);
+            }
+            return true;
+        }
+    }
+
+    // atomic: the caller's transaction holds every chunk, so nothing is announced until it commits and there is no
+    // checkpoint to keep, a failure leaves nothing to resume
+    private ProductImportResult runImport(Path file, String source, ImportFormat format, boolean atomic) throws IOException {
+        long started = System.nanoTime();
+        long imported = 0;
+        long failed = 0;
+        try (FileChannel channel = FileChannel.open(file)) {
+            long size = channel.size();
+            long headerEnd = 0;
+            ProductRecordParser parser;
+            if (format == ImportFormat.CSV) {
+                headerEnd = lineEnd(channel, 0, size);
+                parser = ProductRecordParser.csv(read(channel, 0, headerEnd));
+            } else {
+                parser = ProductRecordParser.ndjson(objectMapper.readerFor(Product.class));
+            }
+            Checkpoint checkpoint = atomic ? new Checkpoint(0, 0) : checkpoint(source, size);
+            if (checkpoint.offset() > 0) {
+                log.info("Resuming the import of {} at byte {} of {}", source, checkpoint.offset(), size);
+            }
+
+            ForkJoinPool parsers = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+            try {
+                // parsed and parsing chunks in file order; the writer only ever takes the oldest
+                Deque<CompletableFuture<ParsedChunk>> window = new ArrayDeque<>(queueCapacity);
+                long next = Math.max(checkpoint.offset(), headerEnd);
+                long lastReport = System.nanoTime();
+                while (true) {
+                    while (window.size() < queueCapacity && next < size) {
+                        long start = next;
+                        long end = lineEnd(channel, Math.min(size, start + chunkSize.toBytes()), size);
+                        window.add(CompletableFuture.supplyAsync(() -> parse(channel, parser, start, end), parsers));
+                        next = end;
+                    }
+                    CompletableFuture<ParsedChunk> oldest = window.poll();
+                    if (oldest == null) {
+                        break;
+                    }
+                    ParsedChunk chunk = oldest.join();
+                    if (atomic) {
+                        insert(chunk);
+                    } else {
+                        write(chunk, source, size, checkpoint.rows() + imported + chunk.products().size());
+                        imported();
+                    }
+                    imported += chunk.products().size();
+                    failed += chunk.failed();
+                    importedRows.increment(chunk.products().size());
+                    failedRows.increment(chunk.failed());
+                    if (System.nanoTime() - lastReport >= progressInterval.toNanos()) {
+                        log.info("Importing {}: {} rows, {} of {} bytes", source, checkpoint.rows() + imported, chunk.end(), size);
+                        lastReport = System.nanoTime();
+                    }
+                }
+            } finally {
+                parsers.shutdownNow();
+                if (!atomic && imported > 0 && productPriceIndex != null) {
+                    // one load instead of an O(n) array shift per imported row
+                    productPriceIndex.rebuild();
+                }
+            }
+            if (!atomic) {
+                // finished, importing the same file again is a new import
+                jdbcTemplate.update("delete from product_import where source = ?", source);
+            }
+
+            long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+            ProductImportResult result = new ProductImportResult(imported, failed, checkpoint.offset(), size, elapsedMillis);
+            log.info("Imported {} rows ({} invalid) from {} in {} ms, {} rows/s", imported, failed, source, elapsedMillis,
+                    result.getRowsPerSecond());
+            return result;
+        }
+    }
+
+    private static ParsedChunk parse(FileChannel channel, ProductRecordParser parser, long start, long end) {
+        try {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            List<Product> products = new ArrayList<>();
+            int failed = parser.parse(buffer, start, products);
+            return new ParsedChunk(end, products, failed);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // The chunk's rows and its checkpoint, in a transaction of their own
+    private void write(ParsedChunk chunk, String source, long size, long rows) {
+        transactionTemplate.executeWithoutResult(status -> {
+            insert(chunk);
+            jdbcTemplate.update(SAVE_CHECKPOINT, source, size, chunk.end(), rows);
+        });
+    }
+
+    private void insert(ParsedChunk chunk) {
+        for (Product product : chunk.products()) {
+            product.setId(productIdAllocator.nextId());
+            product.setVersion(0L);
+        }
+        jdbcTemplate.batchUpdate(INSERT, chunk.products(), batchSize, (ps, product) -> {
+            ps.setLong(1, product.getId());
+            ps.setString(2, product.getName());
+            ps.setString(3, product.getDescription());
+            ps.setDouble(4, product.getPrice());
+        });
+    }
+
+    // After committed rows: they were inserted behind Hibernate's back, so its query cache has to forget the old
+    // results, and the change feed gets one RESET per commit instead of an event per row, which would lap every
+    // subscriber anyway
+    private void imported() {
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictQueryRegions();
+        productCache.markChanged();
+        productChangeFeed.publish(ChangeType.RESET, null, null);
+    }
+
+    // A checkpoint only counts for the same file: a different size means the file was replaced, start over
+    private Checkpoint checkpoint(String source, long size) {
+        List<Checkpoint> checkpoints = jdbcTemplate.query(
+                "select committed_offset, imported_rows from product_import where source = ? and file_size = ?",
+                (rs, rowNum) -> new Checkpoint(rs.getLong(1), rs.getLong(2)), source, size);
+        return checkpoints.isEmpty() ? new Checkpoint(0, 0) : checkpoints.get(0);
+    }
+
+    // Position just past the first newline at or after position, or the end of the file
+    private static long lineEnd(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static String read(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+    }
+
+    private static String source(Path file) {
+        return file.toAbsolutePath().normalize().toString();
+    }
+
+    private record Checkpoint(long offset, long rows) {
+    }
+
+    private record ParsedChunk(long end, List<Product> products, int failed) {
+    }
+}
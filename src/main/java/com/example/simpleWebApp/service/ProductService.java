@@ -1,80 +1,465 @@
 package com.example.simpleWebApp.service;
 
+import com.example.simpleWebApp.cache.ProductCache;
+import com.example.simpleWebApp.cache.SingleFlight;
+import com.example.simpleWebApp.changes.ProductChangeFeed;
+import com.example.simpleWebApp.config.ReplicaRoutingDataSource;
+import com.example.simpleWebApp.metrics.ErrorMetrics;
 import com.example.simpleWebApp.model.GenericResponse;
+import com.example.simpleWebApp.enums.ChangeType;
 import com.example.simpleWebApp.enums.ErrorCode;
+import com.example.simpleWebApp.index.ProductPriceIndex;
 import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.model.ProductCacheStats;
+import com.example.simpleWebApp.model.ProductPage;
+import com.example.simpleWebApp.model.ProductPatch;
+import com.example.simpleWebApp.model.ProductPrice;
+import com.example.simpleWebApp.model.ProductSummary;
 import com.example.simpleWebApp.repository.ProductRepository;
+import com.example.simpleWebApp.writebehind.ProductWriteBehind;
+import jakarta.persistence.CacheRetrieveMode;
+import jakarta.persistence.EntityManager;
+import io.micrometer.core.annotation.Timed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
+// one timer per public method, tagged with the method name, with a percentile histogram
+@Timed(value = "product.service", histogram = true)
 @Service
 public class ProductService {
 
+    private static final Logger log = LoggerFactory.getLogger(ProductService.class);
+
+    @Autowired
+    private ErrorMetrics errorMetrics;
+
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private ProductChangeFeed productChangeFeed;
+
+    // only under the write-behind profile
+    @Autowired(required = false)
+    private ProductWriteBehind productWriteBehind;
+
+    // only with products.price-index.enabled
+    @Autowired(required = false)
+    private ProductPriceIndex productPriceIndex;
+
+    // only under the read-replicas profile
+    @Autowired(required = false)
+    private ReplicaRoutingDataSource replicaRoutingDataSource;
+
+    private static final Set<String> SORTABLE_FIELDS = Set.of("id", "name", "price");
+
+    private static final Map<String, Object> BYPASS_SECOND_LEVEL_CACHE =
+            Map.of("jakarta.persistence.cache.retrieveMode", CacheRetrieveMode.BYPASS);
+
+    // built once, a method reference per lookup would be the only allocation on a cached read
+    private final Function<Long, Optional<Product>> productLoader = this::loadProduct;
+    // Concurrent identical list reads share one query; reads by id share theirs inside ProductCache.
+    // Keys start with the list version, so a read that starts after a write never joins a query from before it.
+    private final SingleFlight<List<Object>, List<Product>> listReads = new SingleFlight<>();
+    private final SingleFlight<List<Object>, List<ProductSummary>> searchReads = new SingleFlight<>();
+
+    @Value("${products.page.default-size:50}")
+    private int defaultPageSize;
+
+    @Value("${products.page.max-size:500}")
+    private int maxPageSize;
+
     public GenericResponse<Product> createProduct(Product product) {
         try {
+            if (productWriteBehind != null) {
+                Product accepted = productWriteBehind.create(product);
+                changed(ChangeType.CREATED, accepted.getId(), accepted);
+                return new GenericResponse<>(accepted);
+            }
             Product savedProduct = productRepository.save(product);
+            productCache.put(savedProduct);
+            changed(ChangeType.CREATED, savedProduct.getId(), savedProduct);
             return new GenericResponse<>(savedProduct);
         } catch (Exception e) {
-            return new GenericResponse<>("Error creating product", ErrorCode.PRODUCT_CREATION_FAILED);
+            return errorMetrics.error("Error creating product", ErrorCode.PRODUCT_CREATION_FAILED, e);
         }
     }
 
     public GenericResponse<List<Product>> getAllProducts() {
         try {
-            List<Product> products = productRepository.findAll();
+            List<Product> products = listReads.execute(readKey("all"), productRepository::findAll);
+            return new GenericResponse<>(products);
+        } catch (Exception e) {
+            return errorMetrics.error("Error fetching products", ErrorCode.INTERNAL_SERVER_ERROR, e);
+        }
+    }
+
+    public GenericResponse<ProductPage> getProductsPage(String cursor, Integer size) {
+        int pageSize = size == null ? defaultPageSize : size;
+        if (pageSize < 1 || pageSize > maxPageSize) {
+            return errorMetrics.error("Page size must be between 1 and " + maxPageSize, ErrorCode.BAD_REQUEST);
+        }
+        long afterId;
+        try {
+            afterId = cursor == null ? 0L : decodeCursor(cursor);
+        } catch (IllegalArgumentException e) {
+            return errorMetrics.error("Invalid cursor", ErrorCode.BAD_REQUEST);
+        }
+        try {
+            // one extra row tells us whether there is a next page without a count query
+            List<Product> products = listReads.execute(readKey("page", afterId, pageSize),
+                    () -> productRepository.findByIdGreaterThanOrderByIdAsc(afterId, Limit.of(pageSize + 1)));
+            String next = null;
+            if (products.size() > pageSize) {
+                products = products.subList(0, pageSize);
+                next = encodeCursor(products.get(pageSize - 1).getId());
+            }
+            return new GenericResponse<>(new ProductPage(products, next));
+        } catch (Exception e) {
+            return errorMetrics.error("Error fetching products", ErrorCode.INTERNAL_SERVER_ERROR, e);
+        }
+    }
+
+    public GenericResponse<List<ProductSummary>> searchProducts(String name, String q, Double minPrice, Double maxPrice,
+                                                                String sort, Integer size) {
+        int limit = size == null ? defaultPageSize : size;
+        if (limit < 1 || limit > maxPageSize) {
+            return errorMetrics.error("Page size must be between 1 and " + maxPageSize, ErrorCode.BAD_REQUEST);
+        }
+        if (minPrice != null && maxPrice != null && minPrice > maxPrice) {
+            return errorMetrics.error("minPrice must not be greater than maxPrice", ErrorCode.BAD_REQUEST);
+        }
+        Sort order;
+        try {
+            order = parseSort(sort);
+        } catch (IllegalArgumentException e) {
+            return errorMetrics.error(e.getMessage(), ErrorCode.BAD_REQUEST);
+        }
+        try {
+            String nameFilter = blankToNull(name);
+            String text = blankToNull(q);
+            List<ProductSummary> products = searchReads.execute(readKey("search", nameFilter, text, minPrice, maxPrice, order, limit),
+                    () -> productRepository.searchProducts(nameFilter, text, minPrice, maxPrice, order, limit));
             return new GenericResponse<>(products);
         } catch (Exception e) {
-            return new GenericResponse<>("Error fetching products", ErrorCode.INTERNAL_SERVER_ERROR);
+            return errorMetrics.error("Error searching products", ErrorCode.INTERNAL_SERVER_ERROR, e);
+        }
+    }
+
+    // Cheapest products first, optionally within a price range. Served from the in-memory price index once it is
+    // built, the database answers the same query until then or when the index is switched off.
+    public GenericResponse<List<ProductPrice>> getPrices(Double minPrice, Double maxPrice, Integer size) {
+        int limit = size == null ? defaultPageSize : size;
+        if (limit < 1 || limit > maxPageSize) {
+            return errorMetrics.error("Page size must be between 1 and " + maxPageSize, ErrorCode.BAD_REQUEST);
+        }
+        if (minPrice != null && maxPrice != null && minPrice > maxPrice) {
+            return errorMetrics.error("minPrice must not be greater than maxPrice", ErrorCode.BAD_REQUEST);
+        }
+        double min = minPrice == null ? -Double.MAX_VALUE : minPrice;
+        double max = maxPrice == null ? Double.MAX_VALUE : maxPrice;
+        try {
+            if (productPriceIndex != null && productPriceIndex.isReady()) {
+                long[] ids = new long[limit];
+                double[] prices = new double[limit];
+                int found = productPriceIndex.range(min, max, ids, prices);
+                List<ProductPrice> products = new ArrayList<>(found);
+                for (int i = 0; i < found; i++) {
+                    products.add(new ProductPrice(ids[i], prices[i]));
+                }
+                return new GenericResponse<>(products);
+            }
+            return new GenericResponse<>(productRepository.findPrices(min, max, Limit.of(limit)));
+        } catch (Exception e) {
+            return errorMetrics.error("Error fetching products", ErrorCode.INTERNAL_SERVER_ERROR, e);
+        }
+    }
+
+    // Hands every product to the consumer in id order, detaching each one so the persistence context stays empty
+    @Transactional(readOnly = true)
+    public void streamAllProducts(Consumer<Product> consumer) {
+        try (Stream<Product> products = productRepository.streamAllByOrderByIdAsc()) {
+            products.forEach(product -> {
+                consumer.accept(product);
+                entityManager.detach(product);
+            });
         }
     }
 
     public GenericResponse<Product> getProductById(Long id) {
         try {
-            Optional<Product> product = productRepository.findById(id);
+            Optional<Product> product = ReplicaRoutingDataSource.isPinnedToPrimary()
+                    ? loadFromPrimary(id)
+                    : productCache.get(id, productLoader);
             if (product.isPresent()) {
                 return new GenericResponse<>(product.get());
             } else {
-                return new GenericResponse<>("Product not found", ErrorCode.PRODUCT_NOT_FOUND);
+                return errorMetrics.notFound();
             }
         } catch (Exception e) {
-            return new GenericResponse<>("Error fetching product by id", ErrorCode.INTERNAL_SERVER_ERROR);
+            return errorMetrics.error("Error fetching product by id", ErrorCode.INTERNAL_SERVER_ERROR, e);
         }
     }
 
     public GenericResponse<Product> updateProduct(Long id, Product productDetails) {
         try {
-            Optional<Product> existingProduct = productRepository.findById(id);
-            if (existingProduct.isPresent()) {
-                Product product = existingProduct.get();
-                product.setName(productDetails.getName());
-                product.setPrice(productDetails.getPrice());
-                // Other fields update logic
-                return new GenericResponse<>(productRepository.save(product));
-            } else {
-                return new GenericResponse<>("Product not found", ErrorCode.PRODUCT_NOT_FOUND);
+            Long version = productDetails.getVersion();
+            if (productWriteBehind != null && version == null) {
+                Optional<Product> accepted = productWriteBehind.update(id, productDetails, key -> productCache.get(key, productLoader));
+                if (accepted.isPresent()) {
+                    changed(ChangeType.UPDATED, id, accepted.get());
+                    return new GenericResponse<>(accepted.get());
+                }
+                return errorMetrics.notFound();
             }
+            // the version check needs the row as it is with every accepted write applied
+            return writeNow(id, () -> updateNow(id, productDetails, version));
+        } catch (Exception e) {
+            return errorMetrics.error("Error updating product", ErrorCode.PRODUCT_UPDATE_FAILED, e);
+        }
+    }
+
+    private GenericResponse<Product> updateNow(Long id, Product productDetails, Long version) {
+        Long newVersion = productRepository.updateDetailsReturningVersion(id, productDetails.getName(),
+                productDetails.getDescription(), productDetails.getPrice(), version);
+        if (newVersion == null) {
+            return noRowUpdated(id, version);
+        }
+        // the bulk update bypasses the entity, so drop the cached copy instead of refreshing it
+        productCache.invalidate(id);
+        productDetails.setId(id);
+        productDetails.setVersion(newVersion);
+        changed(ChangeType.UPDATED, id, productDetails);
+        return new GenericResponse<>(productDetails);
+    }
+
+    // JSON Merge Patch (RFC 7396): fields present in the body are set, null clears them, absent ones are left alone
+    public GenericResponse<Product> patchProduct(Long id, Map<String, Object> patch) {
+        ProductPatch productPatch;
+        try {
+            productPatch = parsePatch(patch);
+        } catch (IllegalArgumentException e) {
+            return errorMetrics.error(e.getMessage(), ErrorCode.BAD_REQUEST);
+        }
+        try {
+            return writeNow(id, () -> patchNow(id, productPatch));
         } catch (Exception e) {
-            return new GenericResponse<>("Error updating product", ErrorCode.PRODUCT_UPDATE_FAILED);
+            return errorMetrics.error("Error updating product", ErrorCode.PRODUCT_UPDATE_FAILED, e);
+        }
+    }
+
+    private GenericResponse<Product> patchNow(Long id, ProductPatch productPatch) {
+        if (!productPatch.getChanges().isEmpty()) {
+            int updated = productRepository.patchProduct(id, productPatch.getChanges(), productPatch.getVersion());
+            if (updated == 0) {
+                return noRowUpdated(id, productPatch.getVersion());
+            }
+            productCache.invalidate(id);
         }
+        Optional<Product> product = productRepository.findById(id);
+        if (product.isEmpty()) {
+            return errorMetrics.notFound();
+        }
+        // a patch with only a version writes nothing, it still fails if the row has moved on since
+        if (productPatch.getChanges().isEmpty() && productPatch.getVersion() != null
+                && !productPatch.getVersion().equals(product.get().getVersion())) {
+            return errorMetrics.versionConflict();
+        }
+        if (!productPatch.getChanges().isEmpty()) {
+            changed(ChangeType.UPDATED, id, product.get());
+        }
+        return new GenericResponse<>(product.get());
     }
 
     public GenericResponse<Void> deleteProduct(Long id) {
+        return deleteProduct(id, null);
+    }
+
+    // A non-null version only deletes the row if nobody changed it since the client read it
+    public GenericResponse<Void> deleteProduct(Long id, Long version) {
         try {
-            Optional<Product> existingProduct = productRepository.findById(id);
-            if (existingProduct.isPresent()) {
-                productRepository.delete(existingProduct.get());
-                return new GenericResponse<>(null);
-            } else {
-                return new GenericResponse<>("Product not found", ErrorCode.PRODUCT_NOT_FOUND);
+            return writeNow(id, () -> deleteNow(id, version));
+        } catch (Exception e) {
+            return errorMetrics.error("Error deleting product", ErrorCode.PRODUCT_DELETION_FAILED, e);
+        }
+    }
+
+    private GenericResponse<Void> deleteNow(Long id, Long version) {
+        int deleted = version == null
+                ? productRepository.deleteProductById(id)
+                : productRepository.deleteProductByIdAndVersion(id, version);
+        if (deleted == 0) {
+            return noRowUpdated(id, version);
+        }
+        productCache.invalidate(id);
+        changed(ChangeType.DELETED, id, null);
+        return new GenericResponse<>(null);
+    }
+
+    // Every successful write ends here, the change feed and the price index see writes in the same order.
+    // The row is written whatever happens here, so a failure is logged and the cached copy dropped, and the client
+    // still hears that the write succeeded; an error would only make it retry and create the product twice.
+    private void changed(ChangeType type, Long id, Product product) {
+        try {
+            productChangeFeed.publish(type, id, product);
+            if (productPriceIndex != null) {
+                productPriceIndex.apply(type, id, product);
             }
         } catch (Exception e) {
-            return new GenericResponse<>("Error deleting product", ErrorCode.PRODUCT_DELETION_FAILED);
+            log.error("Product {} was written but not published", id, e);
+            productCache.invalidate(id);
+        }
+    }
+
+    public GenericResponse<ProductCacheStats> getCacheStats() {
+        return new GenericResponse<>(new ProductCacheStats(productCache.stats(), productCache.estimatedSize()));
+    }
+
+    // Changes whenever a product is created, updated or deleted through this instance
+    public String getListVersion() {
+        return productCache.listVersion();
+    }
+
+    // The list version to tag a list read on this thread with, null when a lagging replica may serve the read.
+    // The version already counts the latest write, rows from before it would carry its tag and be kept by the
+    // client with 304s until the next write.
+    public String getListETagVersion() {
+        return replicaRoutingDataSource == null || ReplicaRoutingDataSource.isPinnedToPrimary() ? productCache.listVersion() : null;
+    }
+
+    // A client pinned to the primary after its own write must not get a result read from a lagging replica
+    private List<Object> readKey(Object... parameters) {
+        List<Object> key = new ArrayList<>(parameters.length + 2);
+        key.add(productCache.listVersion());
+        key.add(ReplicaRoutingDataSource.isPinnedToPrimary());
+        Collections.addAll(key, parameters);
+        return key;
+    }
+
+    // Products the write-behind has accepted but not flushed are only there, not in the database yet
+    private Optional<Product> loadProduct(Long id) {
+        Product accepted = productWriteBehind == null ? null : productWriteBehind.find(id);
+        return accepted != null ? Optional.of(accepted) : productRepository.findById(id);
+    }
+
+    // The by-id cache and Hibernate's second-level cache are shared with unpinned readers and may hold a row a lagging
+    // replica returned after the write, so a client pinned after its own write skips both
+    private Optional<Product> loadFromPrimary(Long id) {
+        Product accepted = productWriteBehind == null ? null : productWriteBehind.find(id);
+        if (accepted != null) {
+            return Optional.of(accepted);
+        }
+        return Optional.ofNullable(entityManager.find(Product.class, id, BYPASS_SECOND_LEVEL_CACHE));
+    }
+
+    // A write straight to the database. Under write-behind it runs on top of every accepted write, and no update of
+    // the id is accepted until it has committed and dropped the cached row, so the two never hand out one version twice.
+    private <T> T writeNow(Long id, Supplier<T> write) {
+        return productWriteBehind == null ? write.get() : productWriteBehind.synchronous(id, write);
+    }
+
+    // Only the failure path pays for a second query, to tell a stale version from a missing row
+    private <T> GenericResponse<T> noRowUpdated(Long id, Long version) {
+        if (version != null && productRepository.existsById(id)) {
+            return errorMetrics.versionConflict();
+        }
+        return errorMetrics.notFound();
+    }
+
+    // Validates every field of a merge patch and keeps only the column changes, version is the optimistic lock
+    static ProductPatch parsePatch(Map<String, Object> patch) {
+        if (patch == null) {
+            throw new IllegalArgumentException("Patch body is required");
+        }
+        Map<String, Object> changes = new LinkedHashMap<>();
+        Long version = null;
+        for (Map.Entry<String, Object> field : patch.entrySet()) {
+            Object value = field.getValue();
+            switch (field.getKey()) {
+                case "name", "description" -> {
+                    if (value != null && !(value instanceof String)) {
+                        throw new IllegalArgumentException(field.getKey() + " must be a string or null");
+                    }
+                    changes.put(field.getKey(), value);
+                }
+                case "price" -> {
+                    if (!(value instanceof Number price) || !Double.isFinite(price.doubleValue())) {
+                        throw new IllegalArgumentException("price must be a number");
+                    }
+                    changes.put("price", price.doubleValue());
+                }
+                case "version" -> {
+                    if (!(value instanceof Integer || value instanceof Long)) {
+                        throw new IllegalArgumentException("version must be an integer");
+                    }
+                    version = ((Number) value).longValue();
+                }
+                case "id" -> throw new IllegalArgumentException("id cannot be changed");
+                default -> throw new IllegalArgumentException("Unknown field " + field.getKey());
+            }
+        }
+        return new ProductPatch(changes, version);
+    }
+
+    // "field" or "field,asc|desc"; id breaks ties so equal names or prices come back in a stable order
+    static Sort parseSort(String sort) {
+        if (sort == null || sort.isBlank()) {
+            return Sort.by("id");
+        }
+        String[] parts = sort.split(",", -1);
+        String field = parts[0].trim();
+        if (!SORTABLE_FIELDS.contains(field) || parts.length > 2) {
+            throw new IllegalArgumentException("sort must be one of " + SORTABLE_FIELDS.stream().sorted().toList() + " with an optional ,asc or ,desc");
+        }
+        Sort.Direction direction = Sort.Direction.ASC;
+        if (parts.length == 2) {
+            direction = Sort.Direction.fromOptionalString(parts[1].trim())
+                    .orElseThrow(() -> new IllegalArgumentException("sort direction must be asc or desc"));
+        }
+        Sort order = Sort.by(direction, field);
+        return field.equals("id") ? order : order.and(Sort.by("id"));
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value;
+    }
+
+    static String encodeCursor(long id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Long.toString(id).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    static long decodeCursor(String cursor) {
+        // Base64 and number format errors are both IllegalArgumentExceptions
+        long id = Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII));
+        if (id < 0) {
+            throw new IllegalArgumentException("Negative cursor");
         }
+        return id;
     }
 }
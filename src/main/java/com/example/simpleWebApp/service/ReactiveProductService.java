@@ -0,0 +1,141 @@
+package com.example.simpleWebApp.service;
+
+import com.example.simpleWebApp.enums.ErrorCode;
+import com.example.simpleWebApp.metrics.ErrorMetrics;
+import com.example.simpleWebApp.model.GenericResponse;
+import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.model.ProductPage;
+import com.example.simpleWebApp.model.ProductPatch;
+import com.example.simpleWebApp.repository.ReactiveProductRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+// Non-blocking counterpart of ProductService for the reactive profile, same responses and error codes
+@Service
+@Profile("reactive")
+public class ReactiveProductService {
+
+    @Autowired
+    private ErrorMetrics errorMetrics;
+
+    @Autowired
+    private ReactiveProductRepository reactiveProductRepository;
+
+    @Value("${products.page.default-size:50}")
+    private int defaultPageSize;
+
+    @Value("${products.page.max-size:500}")
+    private int maxPageSize;
+
+    public Mono<GenericResponse<Product>> createProduct(Product product) {
+        return reactiveProductRepository.nextId()
+                .flatMap(id -> {
+                    product.setId(id);
+                    product.setVersion(0L);
+                    return reactiveProductRepository.insertProduct(product);
+                })
+                .thenReturn(new GenericResponse<>(product))
+                .onErrorResume(e -> Mono.just(errorMetrics.error("Error creating product", ErrorCode.PRODUCT_CREATION_FAILED, e)));
+    }
+
+    public Mono<GenericResponse<List<Product>>> getAllProducts() {
+        return reactiveProductRepository.streamAll()
+                .collectList()
+                .map(products -> new GenericResponse<>(products))
+                .onErrorResume(e -> Mono.just(errorMetrics.error("Error fetching products", ErrorCode.INTERNAL_SERVER_ERROR, e)));
+    }
+
+    // Backpressure flows from the HTTP connection all the way to the R2DBC driver
+    public Flux<Product> streamAllProducts() {
+        return reactiveProductRepository.streamAll();
+    }
+
+    public Mono<GenericResponse<ProductPage>> getProductsPage(String cursor, Integer size) {
+        int pageSize = size == null ? defaultPageSize : size;
+        if (pageSize < 1 || pageSize > maxPageSize) {
+            return Mono.just(errorMetrics.error("Page size must be between 1 and " + maxPageSize, ErrorCode.BAD_REQUEST));
+        }
+        long afterId;
+        try {
+            afterId = cursor == null ? 0L : ProductService.decodeCursor(cursor);
+        } catch (IllegalArgumentException e) {
+            return Mono.just(errorMetrics.error("Invalid cursor", ErrorCode.BAD_REQUEST));
+        }
+        return reactiveProductRepository.findPageAfter(afterId, pageSize + 1)
+                .collectList()
+                .map(products -> {
+                    String next = null;
+                    if (products.size() > pageSize) {
+                        products = products.subList(0, pageSize);
+                        next = ProductService.encodeCursor(products.get(pageSize - 1).getId());
+                    }
+                    return new GenericResponse<>(new ProductPage(products, next));
+                })
+                .onErrorResume(e -> Mono.just(errorMetrics.error("Error fetching products", ErrorCode.INTERNAL_SERVER_ERROR, e)));
+    }
+
+    public Mono<GenericResponse<Product>> getProductById(Long id) {
+        return reactiveProductRepository.findProductById(id)
+                .map(product -> new GenericResponse<>(product))
+                // deferred, so the not-found counter only moves when nothing was found
+                .switchIfEmpty(Mono.fromSupplier(() -> errorMetrics.notFound()))
+                .onErrorResume(e -> Mono.just(errorMetrics.error("Error fetching product by id", ErrorCode.INTERNAL_SERVER_ERROR, e)));
+    }
+
+    public Mono<GenericResponse<Product>> updateProduct(Long id, Product productDetails) {
+        Long version = productDetails.getVersion();
+        return reactiveProductRepository.updateProduct(id, productDetails)
+                .map(newVersion -> {
+                    productDetails.setId(id);
+                    productDetails.setVersion(newVersion);
+                    return new GenericResponse<>(productDetails);
+                })
+                .switchIfEmpty(Mono.defer(() -> noRowUpdated(id, version)))
+                .onErrorResume(e -> Mono.just(errorMetrics.error("Error updating product", ErrorCode.PRODUCT_UPDATE_FAILED, e)));
+    }
+
+    public Mono<GenericResponse<Product>> patchProduct(Long id, Map<String, Object> patch) {
+        ProductPatch productPatch;
+        try {
+            productPatch = ProductService.parsePatch(patch);
+        } catch (IllegalArgumentException e) {
+            return Mono.just(errorMetrics.error(e.getMessage(), ErrorCode.BAD_REQUEST));
+        }
+        Mono<Long> updated = productPatch.getChanges().isEmpty()
+                ? Mono.just(1L)
+                : reactiveProductRepository.patchProduct(id, productPatch.getChanges(), productPatch.getVersion());
+        return updated
+                .flatMap(rows -> rows == 0 ? noRowUpdated(id, productPatch.getVersion()) : getProductById(id))
+                // a patch with only a version writes nothing, it still fails if the row has moved on since
+                .map(response -> productPatch.getChanges().isEmpty() && productPatch.getVersion() != null
+                        && response.getData() != null && !productPatch.getVersion().equals(response.getData().getVersion())
+                        ? errorMetrics.<Product>versionConflict()
+                        : response)
+                .onErrorResume(e -> Mono.just(errorMetrics.error("Error updating product", ErrorCode.PRODUCT_UPDATE_FAILED, e)));
+    }
+
+    public Mono<GenericResponse<Void>> deleteProduct(Long id) {
+        return reactiveProductRepository.deleteProductById(id)
+                .map(deleted -> deleted == 0
+                        ? errorMetrics.<Void>notFound()
+                        : new GenericResponse<Void>((Void) null))
+                .onErrorResume(e -> Mono.just(errorMetrics.error("Error deleting product", ErrorCode.PRODUCT_DELETION_FAILED, e)));
+    }
+
+    private Mono<GenericResponse<Product>> noRowUpdated(Long id, Long version) {
+        if (version == null) {
+            return Mono.just(errorMetrics.notFound());
+        }
+        return reactiveProductRepository.existsById(id)
+                .map(exists -> exists
+                        ? errorMetrics.<Product>versionConflict()
+                        : errorMetrics.<Product>notFound());
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.simpleWebApp.writebehind;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+// Hands out product ids without a database round trip per id, the same way Hibernate's pooled-lo optimizer does:
+// every value fetched from product_seq is the first id of a block of BLOCK_SIZE, so both can share the sequence.
+// Used by the write-behind profile and by file imports, which both write rows without Hibernate.
+@Component
+public class ProductIdAllocator {
+
+    // the increment of product_seq and the allocationSize on Product
+    private static final int BLOCK_SIZE = 50;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private long next;
+    private long end;
+
+    public synchronized long nextId() {
+        if (next == end) {
+            next = jdbcTemplate.queryForObject("select next value for product_seq", Long.class);
+            end = next + BLOCK_SIZE;
+        }
+        return next++;
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.simpleWebApp.writebehind;
+
+import com.example.simpleWebApp.model.Product;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Append-only log of accepted product writes in a memory-mapped file.
+// The first int of the file is the checkpoint: records before it are in the database, replay starts there.
+// A record is int length, int CRC32 of the payload, then its type (create or update), id, version, price, name and
+// description.
+// A zero length ends the log and replay also stops at a record whose checksum does not match, which is
+// where a crash cut an append short. Once append returns the record is in the page cache and survives
+// the process dying; with force it is also on disk before append returns.
+// Not thread-safe, ProductWriteBehind serializes every call.
+public class ProductJournal implements AutoCloseable {
+
+    private static final int FILE_HEADER = Long.BYTES;
+    private static final int RECORD_HEADER = 2 * Integer.BYTES;
+    private static final int NULL_STRING = -1;
+    private static final byte CREATE = 1;
+    private static final byte UPDATE = 2;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final boolean force;
+    private int position;
+
+    public ProductJournal(Path path, int capacity, boolean force) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        this.force = force;
+        if (buffer.getInt(0) < FILE_HEADER || buffer.getInt(0) > capacity) {
+            // new file, the mapping extended it with zeros, so there is already an end marker after the header
+            buffer.putInt(0, FILE_HEADER);
+        }
+        this.position = buffer.getInt(0);
+    }
+
+    // Reads every record after the checkpoint and leaves the write position after the last intact one
+    public List<ProductWrite> replay() {
+        List<ProductWrite> writes = new ArrayList<>();
+        position = buffer.getInt(0);
+        while (position + RECORD_HEADER <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + RECORD_HEADER + length > buffer.capacity()) {
+                break;
+            }
+            ByteBuffer payload = buffer.slice(position + RECORD_HEADER, length);
+            if (checksum(payload) != buffer.getInt(position + Integer.BYTES)) {
+                break;
+            }
+            writes.add(read(payload));
+            position += RECORD_HEADER + length;
+        }
+        // whatever followed a torn record is garbage, the next append starts over it
+        buffer.putInt(position, 0);
+        return writes;
+    }
+
+    // False if the record does not fit in what is left of the file
+    public boolean append(ProductWrite write) {
+        Product product = write.product();
+        byte[] name = bytes(product.getName());
+        byte[] description = bytes(product.getDescription());
+        int length = Byte.BYTES + 2 * Long.BYTES + Double.BYTES + stringSize(name) + stringSize(description);
+        // keep room for the end marker behind the record
+        if ((long) position + RECORD_HEADER + length + Integer.BYTES > buffer.capacity()) {
+            return false;
+        }
+        ByteBuffer payload = buffer.slice(position + RECORD_HEADER, length);
+        payload.put(write.create() ? CREATE : UPDATE).putLong(product.getId()).putLong(product.getVersion()).putDouble(product.getPrice());
+        putString(payload, name);
+        putString(payload, description);
+        int end = position + RECORD_HEADER + length;
+        buffer.putInt(end, 0);
+        buffer.putInt(position + Integer.BYTES, checksum(payload.flip()));
+        // the length goes in last, until then the record is invisible to replay
+        buffer.putInt(position, length);
+        if (force) {
+            buffer.force(position, end + Integer.BYTES - position);
+        }
+        position = end;
+        return true;
+    }
+
+    public int position() {
+        return position;
+    }
+
+    // Everything before offset is in the database. Once all of it is, the log starts over at the header;
+    // otherwise the unflushed tail is moved to the front when that cannot overwrite itself. The checkpoint
+    // is moved first, so a crash halfway through either still replays from an intact record.
+    public void checkpoint(int offset) {
+        buffer.putInt(0, offset);
+        int tail = position - offset;
+        if (tail == 0) {
+            buffer.putInt(FILE_HEADER, 0);
+            buffer.putInt(0, FILE_HEADER);
+            position = FILE_HEADER;
+        } else if (tail + Integer.BYTES <= offset - FILE_HEADER) {
+            byte[] records = new byte[tail];
+            buffer.get(offset, records);
+            buffer.put(FILE_HEADER, records);
+            buffer.putInt(FILE_HEADER + tail, 0);
+            buffer.putInt(0, FILE_HEADER);
+            position = FILE_HEADER + tail;
+        }
+        if (force) {
+            buffer.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private static ProductWrite read(ByteBuffer payload) {
+        boolean create = payload.get() == CREATE;
+        Product product = new Product();
+        product.setId(payload.getLong());
+        product.setVersion(payload.getLong());
+        product.setPrice(payload.getDouble());
+        product.setName(getString(payload));
+        product.setDescription(getString(payload));
+        return new ProductWrite(product, create);
+    }
+
+    private static int checksum(ByteBuffer payload) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(payload.duplicate());
+        return (int) crc32.getValue();
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int stringSize(byte[] value) {
+        return Integer.BYTES + (value == null ? 0 : value.length);
+    }
+
+    private static void putString(ByteBuffer payload, byte[] value) {
+        if (value == null) {
+            payload.putInt(NULL_STRING);
+        } else {
+            payload.putInt(value.length).put(value);
+        }
+    }
+
+    private static String getString(ByteBuffer payload) {
+        int length = payload.getInt();
+        if (length == NULL_STRING) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        payload.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.simpleWebApp.writebehind;
+
+import com.example.simpleWebApp.model.Product;
+
+// One accepted write-behind write. Only a create may insert the row; an update applies to the row if it is still
+// there and does nothing once it is gone, so an update accepted just before a delete cannot bring the product back.
+// An update of a product whose create is not flushed yet is still a create, it is the first state the row gets.
+public record ProductWrite(Product product, boolean create) {
+}
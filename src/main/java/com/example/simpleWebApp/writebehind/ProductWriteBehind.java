@@ -0,0 +1,339 @@
+package com.example.simpleWebApp.writebehind;
+
+import com.example.simpleWebApp.cache.ProductCache;
+import com.example.simpleWebApp.model.Product;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Write-behind for creates and unversioned updates under the write-behind profile.
+// A write is appended to the ProductJournal and put in the ProductCache, then acknowledged; a background flush
+// takes everything accepted since the last one, keeps only the latest state per id and writes it in one
+// batched transaction. Creates insert the row, updates only change a row that is still there, so a delete that
+// lands between accepting an update and flushing it stays deleted. On start the journal is replayed into the
+// database before the web server opens.
+// Lists, pages and search only see a write once it is flushed, reads by id see it straight away.
+@Component
+@Profile("write-behind")
+public class ProductWriteBehind implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductWriteBehind.class);
+
+    // H2 MERGE: replaying an old record or racing a newer one never moves a row back to an older version
+    private static final String UPDATE = "merge into product p using (values (cast(? as bigint), cast(? as varchar), "
+            + "cast(? as varchar), cast(? as double precision), cast(? as bigint))) s(id, name, description, price, version) "
+            + "on p.id = s.id "
+            + "when matched and p.version < s.version then update set name = s.name, description = s.description, "
+            + "price = s.price, version = s.version";
+    // only a create may add the row
+    private static final String UPSERT = UPDATE + " when not matched then insert (id, name, description, price, version) "
+            + "values (s.id, s.name, s.description, s.price, s.version)";
+
+    @Autowired
+    private ProductIdAllocator productIdAllocator;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Value("${products.write-behind.journal-path:./data/products.journal}")
+    private Path journalPath;
+
+    @Value("${products.write-behind.journal-size:64MB}")
+    private DataSize journalSize;
+
+    @Value("${products.write-behind.force:false}")
+    private boolean force;
+
+    @Value("${products.write-behind.flush-interval:100ms}")
+    private Duration flushInterval;
+
+    @Value("${products.write-behind.batch-size:500}")
+    private int batchSize;
+
+    // guards the journal and pending
+    private final ReentrantLock lock = new ReentrantLock();
+    // one writer per id at a time: orders the versions handed out to updates of the same id, and keeps updates out
+    // while a synchronous write of the id flushes and runs
+    private final ReentrantLock[] stripes = new ReentrantLock[64];
+    private final Object flushLock = new Object();
+
+    // latest accepted state per id that no flush has picked up yet
+    private volatile Map<Long, ProductWrite> pending = new ConcurrentHashMap<>();
+    // what the running flush writes, still readable here until it has committed
+    private volatile Map<Long, ProductWrite> flushing = Map.of();
+
+    private ProductJournal journal;
+    private ScheduledExecutorService flusher;
+    private volatile boolean running;
+
+    public ProductWriteBehind() {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public Product create(Product product) {
+        product.setId(productIdAllocator.nextId());
+        product.setVersion(0L);
+        accept(product, true);
+        return product;
+    }
+
+    // Builds on the newest state of the product, accepted or stored; empty if there is no such product.
+    // The stored row is loaded holding only this id's stripe, a cache miss does not hold up writes of other ids.
+    public Optional<Product> update(Long id, Product details, Function<Long, Optional<Product>> stored) {
+        ReentrantLock stripe = stripe(id);
+        stripe.lock();
+        try {
+            // with the stripe held nothing new is accepted for this id, a flush can only move it into the database
+            // with the same version, so the base read here is still the newest state when it is accepted below
+            ProductWrite current = accepted(id);
+            Optional<Product> base = current != null ? Optional.of(current.product()) : stored.apply(id);
+            if (base.isEmpty()) {
+                return Optional.empty();
+            }
+            details.setId(id);
+            details.setVersion(base.get().getVersion() + 1);
+            accept(details, current != null && current.create());
+            return Optional.of(details);
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    // Runs a synchronous write of one id on top of everything accepted so far. No update of the id is accepted
+    // until it returns, so an update cannot be versioned against the row the write is about to replace.
+    public <T> T synchronous(Long id, Supplier<T> write) {
+        ReentrantLock stripe = stripe(id);
+        stripe.lock();
+        try {
+            flush();
+            return write.get();
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    // synchronous for writes that may touch any id, like a batch
+    public <T> T synchronousAll(Supplier<T> write) {
+        int locked = 0;
+        try {
+            for (; locked < stripes.length; locked++) {
+                stripes[locked].lock();
+            }
+            flush();
+            return write.get();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                stripes[i].unlock();
+            }
+        }
+    }
+
+    private ReentrantLock stripe(Long id) {
+        return stripes[Long.hashCode(id) & (stripes.length - 1)];
+    }
+
+    // An accepted product the database does not have yet, or null
+    public Product find(Long id) {
+        ProductWrite write = accepted(id);
+        return write != null ? write.product() : null;
+    }
+
+    private ProductWrite accepted(Long id) {
+        ProductWrite write = pending.get(id);
+        return write != null ? write : flushing.get(id);
+    }
+
+    // Writes out everything accepted so far, synchronous writes call this first so they apply on top of it
+    public void flush() {
+        synchronized (flushLock) {
+            Map<Long, ProductWrite> batch;
+            int flushedTo;
+            lock.lock();
+            try {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                flushing = batch;
+                pending = new ConcurrentHashMap<>();
+                flushedTo = journal.position();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                write(batch.values());
+            } catch (RuntimeException e) {
+                log.error("Flushing {} products failed, retrying with the next flush", batch.size(), e);
+                lock.lock();
+                try {
+                    // anything accepted meanwhile is newer, but if the batch held the create the row still needs it
+                    batch.forEach((id, write) -> pending.merge(id, write, ProductWriteBehind::latest));
+                } finally {
+                    lock.unlock();
+                }
+                flushing = Map.of();
+                return;
+            }
+            lock.lock();
+            try {
+                journal.checkpoint(flushedTo);
+            } finally {
+                lock.unlock();
+            }
+            flushing = Map.of();
+        }
+    }
+
+    private void accept(Product product, boolean create) {
+        ProductWrite accepted = new ProductWrite(copy(product), create);
+        lock.lock();
+        try {
+            if (running && journal.append(accepted)) {
+                pending.put(product.getId(), accepted);
+                productCache.put(product);
+                return;
+            }
+            productCache.put(product);
+        } finally {
+            lock.unlock();
+        }
+        // journal full or shutting down: this one write goes to the database before it is acknowledged
+        write(List.of(accepted));
+        if (running) {
+            flusher.execute(this::flush);
+        }
+    }
+
+    private void write(Collection<ProductWrite> writes) {
+        List<Product> creates = new ArrayList<>();
+        List<Product> updates = new ArrayList<>();
+        writes.forEach(write -> (write.create() ? creates : updates).add(write.product()));
+        int[][] updated = transactionTemplate.execute(status -> {
+            jdbcTemplate.batchUpdate(UPSERT, creates, batchSize, ProductWriteBehind::bind);
+            return jdbcTemplate.batchUpdate(UPDATE, updates, batchSize, ProductWriteBehind::bind);
+        });
+        // the rows changed behind Hibernate's back, so its second-level and query caches have to forget them
+        writes.forEach(write -> entityManagerFactory.getCache().evict(Product.class, write.product().getId()));
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictQueryRegions();
+        // an update that found no row was deleted meanwhile, its accepted state must not outlive it in the cache
+        int index = 0;
+        for (int[] batch : updated) {
+            for (int count : batch) {
+                if (count == 0) {
+                    productCache.invalidate(updates.get(index).getId());
+                }
+                index++;
+            }
+        }
+        productCache.markChanged();
+    }
+
+    private static void bind(PreparedStatement ps, Product product) throws SQLException {
+        ps.setLong(1, product.getId());
+        ps.setString(2, product.getName());
+        ps.setString(3, product.getDescription());
+        ps.setDouble(4, product.getPrice());
+        ps.setLong(5, product.getVersion());
+    }
+
+    // The newer of two writes of the same id, still a create if either of them was
+    private static ProductWrite latest(ProductWrite one, ProductWrite other) {
+        ProductWrite newer = other.product().getVersion() >= one.product().getVersion() ? other : one;
+        return newer.create() || !(one.create() || other.create()) ? newer : new ProductWrite(newer.product(), true);
+    }
+
+    private static Product copy(Product product) {
+        Product copy = new Product();
+        copy.setId(product.getId());
+        copy.setName(product.getName());
+        copy.setDescription(product.getDescription());
+        copy.setPrice(product.getPrice());
+        copy.setVersion(product.getVersion());
+        return copy;
+    }
+
+    @Override
+    public void start() {
+        try {
+            journal = new ProductJournal(journalPath, (int) journalSize.toBytes(), force);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open the write-behind journal " + journalPath, e);
+        }
+        List<ProductWrite> replayed = journal.replay();
+        if (!replayed.isEmpty()) {
+            log.info("Replaying {} journaled product writes", replayed.size());
+            replayed.forEach(write -> pending.merge(write.product().getId(), write, ProductWriteBehind::latest));
+            flush();
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("product-write-behind").daemon().factory());
+        flusher.scheduleWithFixedDelay(this::flush, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.warn("Closing the write-behind journal failed", e);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // starts before and stops after the web server, so no request sees the journal closed
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+}
@@ -0,0 +1,14 @@
+-- matches Product: pooled sequence with the same allocation size, optimistic lock column, search indexes
+create sequence product_seq start with 1 increment by 50;
+
+create table product (
+    id bigint not null,
+    name varchar(255),
+    description varchar(255),
+    price double precision not null,
+    version bigint,
+    primary key (id)
+);
+
+create index idx_product_name on product (name);
+create index idx_product_price on product (price);
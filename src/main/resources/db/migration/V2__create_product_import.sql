@@ -0,0 +1,9 @@
+-- one row per unfinished file import: every row before committed_offset is in product, written in the same
+-- transaction as those rows, so a restarted import picks up exactly where the last commit left it
+create table product_import (
+    source varchar(1024) not null,
+    file_size bigint not null,
+    committed_offset bigint not null,
+    imported_rows bigint not null,
+    primary key (source)
+);
@@ -0,0 +1,225 @@
+package com.example.simpleWebApp;
+
+import com.example.simpleWebApp.metrics.ErrorMetrics;
+import com.example.simpleWebApp.ratelimit.ClientRateLimiter;
+import com.example.simpleWebApp.ratelimit.ConcurrencyLimiter;
+import com.example.simpleWebApp.ratelimit.LoadSheddingFilter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LoadSheddingTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void tokenBucketAllowsBurstThenRateTest() {
+        ClientRateLimiter limiter = new ClientRateLimiter(10, 3, 100, clock::get);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire("a"));
+        }
+        // the fourth has to wait one emission interval, 1/10 s
+        assertEquals(SECOND / 10, limiter.tryAcquire("a"));
+        // another client has its own bucket
+        assertEquals(0, limiter.tryAcquire("b"));
+
+        clock.addAndGet(SECOND / 10);
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("a") > 0);
+
+        // idle for long enough, the bucket is full again but never fuller than the burst
+        clock.addAndGet(10 * SECOND);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire("a"));
+        }
+        assertTrue(limiter.tryAcquire("a") > 0);
+    }
+
+    @Test
+    public void tokenBucketNeverOverGrantsUnderContentionTest() throws Exception {
+        ClientRateLimiter limiter = new ClientRateLimiter(1, 1_000, 100, clock::get);
+        AtomicLong granted = new AtomicLong();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1_000; i++) {
+                        if (limiter.tryAcquire("shared") == 0) {
+                            granted.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        assertEquals(1_000, granted.get());
+    }
+
+    @Test
+    public void concurrencyLimitBacksOffAndRecoversTest() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 2, 8, 100, 0.5, clock::get);
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        assertFalse(limiter.tryAcquire());
+        assertEquals(4, limiter.getInFlight());
+
+        // a slow request halves the limit, a failed one that started after that halves it again down to the floor
+        clock.addAndGet(1_000);
+        limiter.release(1_000, false);
+        assertEquals(2, limiter.getLimit());
+        clock.addAndGet(10);
+        limiter.release(10, true);
+        assertEquals(2, limiter.getLimit());
+        assertEquals(2, limiter.getInFlight());
+        assertFalse(limiter.tryAcquire());
+
+        // fast requests grow it back by about one per limit's worth of them
+        for (int i = 0; i < 20; i++) {
+            limiter.release(10, false);
+            assertTrue(limiter.tryAcquire());
+        }
+        assertTrue(limiter.getLimit() > 2);
+    }
+
+    @Test
+    public void concurrencyLimitBacksOffOncePerHiccupTest() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(200, 20, 1_000, 500, 0.9, clock::get);
+        for (int i = 0; i < 200; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+
+        // one stall slows every request in flight, they all started before the limit went down
+        clock.addAndGet(600);
+        for (int i = 0; i < 200; i++) {
+            limiter.release(600, false);
+        }
+        assertEquals(180, limiter.getLimit());
+
+        // a request that started after the decrease and is still slow takes it down again
+        assertTrue(limiter.tryAcquire());
+        clock.addAndGet(600);
+        limiter.release(600, false);
+        assertEquals(162, limiter.getLimit());
+    }
+
+    @Test
+    public void filterAnswersTooManyRequestsTest() throws Exception {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ObjectMapper objectMapper = new ObjectMapper();
+        LoadSheddingFilter filter = new LoadSheddingFilter(new ClientRateLimiter(1, 1, 100, clock::get),
+                Set.of("partner", "other-partner"), null,
+                new ErrorMetrics(meterRegistry), objectMapper, meterRegistry);
+
+        assertEquals(200, perform(filter, "partner").getStatus());
+        MockHttpServletResponse limited = perform(filter, "partner");
+        assertEquals(429, limited.getStatus());
+        assertEquals("1", limited.getHeader("Retry-After"));
+        JsonNode body = objectMapper.readTree(limited.getContentAsString());
+        assertEquals("TOO_MANY_REQUESTS", body.get("errorCode").asText());
+        // keyed on the API key, not the shared address
+        assertEquals(200, perform(filter, "other-partner").getStatus());
+
+        assertEquals(1, meterRegistry.get("product.requests.shed").tag("reason", "rate-limit").counter().count());
+        assertEquals(1, meterRegistry.get("product.errors").tag("code", "TOO_MANY_REQUESTS").counter().count());
+    }
+
+    // a key nobody configured is not a client of its own, rotating it does not get a fresh bucket
+    @Test
+    public void filterLimitsUnknownKeysByAddressTest() throws Exception {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ClientRateLimiter rateLimiter = new ClientRateLimiter(1, 1, 100, clock::get);
+        LoadSheddingFilter filter = new LoadSheddingFilter(rateLimiter, Set.of("partner"), null,
+                new ErrorMetrics(meterRegistry), new ObjectMapper(), meterRegistry);
+
+        assertEquals(200, perform(filter, "made-up-1").getStatus());
+        for (int i = 2; i < 50; i++) {
+            assertEquals(429, perform(filter, "made-up-" + i).getStatus());
+        }
+        assertEquals(1, rateLimiter.trackedClients());
+        // a configured key still has its own bucket behind the same address
+        assertEquals(200, perform(filter, "partner").getStatus());
+    }
+
+    @Test
+    public void filterShedsAboveConcurrencyLimitTest() throws Exception {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ObjectMapper objectMapper = new ObjectMapper();
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, SECOND, 0.9, clock::get);
+        LoadSheddingFilter filter = new LoadSheddingFilter(null, Set.of(), limiter, new ErrorMetrics(meterRegistry),
+                objectMapper, meterRegistry);
+
+        // the only slot is taken by a request still running
+        assertTrue(limiter.tryAcquire());
+        MockHttpServletResponse shed = perform(filter, null);
+        assertEquals(503, shed.getStatus());
+        assertEquals("SERVICE_UNAVAILABLE", objectMapper.readTree(shed.getContentAsString()).get("errorCode").asText());
+        assertEquals(1, meterRegistry.get("product.requests.shed").tag("reason", "concurrency-limit").counter().count());
+
+        limiter.release(0, false);
+        assertEquals(200, perform(filter, null).getStatus());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    // A batch may legitimately run longer than the target latency, only its failures feed the limit
+    @Test
+    public void filterDoesNotSampleBatchLatencyTest() throws Exception {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        // a zero target makes every sampled request a slow one
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 10, 0, 0.5, System::nanoTime);
+        LoadSheddingFilter filter = new LoadSheddingFilter(null, Set.of(), limiter, new ErrorMetrics(meterRegistry),
+                new ObjectMapper(), meterRegistry);
+        FilterChain slow = (request, response) -> LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(2));
+
+        assertEquals(200, perform(filter, "POST", "/api/products/batch", slow).getStatus());
+        assertEquals(10, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+
+        assertEquals(200, perform(filter, "GET", "/api/products", slow).getStatus());
+        assertEquals(5, limiter.getLimit());
+    }
+
+    private static MockHttpServletResponse perform(LoadSheddingFilter filter, String method, String path, FilterChain chain)
+            throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private static MockHttpServletResponse perform(LoadSheddingFilter filter, String apiKey) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/products");
+        if (apiKey != null) {
+            request.addHeader("X-API-Key", apiKey);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.simpleWebApp;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+// The ProductControllerTest scenarios against the real service and database instead of mocks.
+// No Mockito, so the same class also runs inside the native image: mvn -PnativeTest test
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ProductApiTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    public void createAndGetProductTest() throws Exception {
+        long id = create("{\"name\":\"Api Product\",\"description\":\"Api Description\",\"price\":100.0}");
+
+        mockMvc.perform(get("/api/products/{id}", id))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"" + id + "-0\""))
+                .andExpect(jsonPath("$.data.name").value("Api Product"))
+                .andExpect(jsonPath("$.data.price").value(100.0));
+
+        mockMvc.perform(get("/api/products/{id}", id).header("If-None-Match", "\"" + id + "-0\""))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    public void getProductByIdNotFoundTest() throws Exception {
+        mockMvc.perform(get("/api/products/{id}", Long.MAX_VALUE))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.errorCode").value("PRODUCT_NOT_FOUND"));
+    }
+
+    @Test
+    public void updateProductIfMatchTest() throws Exception {
+        long id = create("{\"name\":\"Api Update\",\"price\":1.0}");
+
+        mockMvc.perform(put("/api/products/{id}", id)
+                        .header("If-Match", "\"" + id + "-0\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Api Updated\",\"price\":2.0}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"" + id + "-1\""));
+
+        // the first update moved the version on
+        mockMvc.perform(put("/api/products/{id}", id)
+                        .header("If-Match", "\"" + id + "-0\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Lost Update\",\"price\":3.0}"))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(jsonPath("$.errorCode").value("PRECONDITION_FAILED"));
+
+        mockMvc.perform(get("/api/products/{id}", id))
+                .andExpect(jsonPath("$.data.name").value("Api Updated"));
+
+        // an unconditional PUT still answers with the new version, so the client can go on with If-Match
+        mockMvc.perform(put("/api/products/{id}", id)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Unconditional Update\",\"price\":4.0}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"" + id + "-2\""))
+                .andExpect(jsonPath("$.data.version").value(2));
+    }
+
+    @Test
+    public void patchProductTest() throws Exception {
+        long id = create("{\"name\":\"Api Patch\",\"description\":\"Kept\",\"price\":5.0}");
+
+        mockMvc.perform(patch("/api/products/{id}", id)
+                        .contentType("application/merge-patch+json")
+                        .content("{\"price\":6.5}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.price").value(6.5))
+                .andExpect(jsonPath("$.data.description").value("Kept"));
+
+        mockMvc.perform(patch("/api/products/{id}", id)
+                        .contentType("application/merge-patch+json")
+                        .content("{\"id\":1}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void searchAndPageTest() throws Exception {
+        create("{\"name\":\"Apisearch One\",\"price\":10.0}");
+        create("{\"name\":\"Apisearch Two\",\"price\":20.0}");
+
+        mockMvc.perform(get("/api/products/search").param("name", "Apisearch").param("sort", "price,desc"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.length()").value(2))
+                .andExpect(jsonPath("$.data[0].name").value("Apisearch Two"));
+
+        mockMvc.perform(get("/api/products/page").param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.items.length()").value(1))
+                .andExpect(jsonPath("$.data.next").exists());
+    }
+
+    @Test
+    public void deleteProductTest() throws Exception {
+        long id = create("{\"name\":\"Api Delete\",\"price\":1.0}");
+
+        mockMvc.perform(delete("/api/products/{id}", id)).andExpect(status().isOk());
+
+        mockMvc.perform(delete("/api/products/{id}", id)).andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/products/{id}", id)).andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void createProductsTest() throws Exception {
+        mockMvc.perform(post("/api/products/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"name\":\"Api Batch 1\",\"price\":1.0},{\"name\":\"Api Batch 2\",\"price\":2.0}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.length()").value(2))
+                .andExpect(jsonPath("$.data[1].index").value(1))
+                .andExpect(jsonPath("$.data[1].id").isNumber());
+    }
+
+    @Test
+    public void binaryFormatsTest() throws Exception {
+        SmileMapper smile = new SmileMapper();
+        CBORMapper cbor = new CBORMapper();
+        byte[] body = smile.writeValueAsBytes(Map.of("name", "Api Smile", "price", 7.5));
+
+        MvcResult created = mockMvc.perform(post("/api/products")
+                        .contentType("application/x-jackson-smile")
+                        .accept("application/cbor")
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/cbor"))
+                .andReturn();
+        JsonNode product = cbor.readTree(created.getResponse().getContentAsByteArray()).get("data");
+        assertEquals("Api Smile", product.get("name").asText());
+
+        MvcResult fetched = mockMvc.perform(get("/api/products/{id}", product.get("id").asLong())
+                        .accept("application/x-jackson-smile"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-jackson-smile"))
+                .andReturn();
+        assertEquals(7.5, smile.readTree(fetched.getResponse().getContentAsByteArray()).get("data").get("price").asDouble());
+
+        // no Accept header, or one that allows anything, still gets JSON
+        mockMvc.perform(get("/api/products/{id}", product.get("id").asLong()))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+        mockMvc.perform(get("/api/products/{id}", product.get("id").asLong()).accept(MediaType.ALL))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+    }
+
+    private long create(String product) throws Exception {
+        MvcResult result = mockMvc.perform(post("/api/products")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(product))
+                .andExpect(status().isOk())
+                .andReturn();
+        JsonNode response = objectMapper.readTree(result.getResponse().getContentAsString());
+        return response.get("data").get("id").asLong();
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.simpleWebApp;
+
+import com.example.simpleWebApp.changes.ProductChangeFeed;
+import com.example.simpleWebApp.enums.ChangeType;
+import com.example.simpleWebApp.enums.ErrorCode;
+import com.example.simpleWebApp.model.BatchItemResult;
+import com.example.simpleWebApp.model.GenericResponse;
+import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.repository.ProductRepository;
+import com.example.simpleWebApp.service.ProductBatchService;
+import com.example.simpleWebApp.service.ProductService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest
+@TestPropertySource(properties = {"products.batch.chunk-size=3", "products.batch.max-items=20"})
+public class ProductBatchServiceTest {
+
+    @Autowired
+    private ProductBatchService productBatchService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @SpyBean
+    private ProductChangeFeed productChangeFeed;
+
+    @Test
+    public void testCreateProductsAcrossChunks() {
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            products.add(product("Batch Product " + i, i));
+        }
+
+        GenericResponse<List<BatchItemResult>> response = productBatchService.createProducts(products);
+
+        assertNull(response.getErrorCode());
+        assertEquals(7, response.getData().size());
+        for (int i = 0; i < 7; i++) {
+            BatchItemResult result = response.getData().get(i);
+            assertEquals(i, result.getIndex());
+            assertNull(result.getErrorCode());
+            assertEquals("Batch Product " + i, productRepository.findById(result.getId()).get().getName());
+        }
+    }
+
+    @Test
+    public void testCreateProductsIsolatesFailedItem() {
+        List<Product> products = Arrays.asList(
+                product("Good 1", 1),
+                product("x".repeat(1000), 2),
+                product("Good 2", 3));
+
+        GenericResponse<List<BatchItemResult>> response = productBatchService.createProducts(products);
+
+        assertNull(response.getData().get(0).getErrorCode());
+        assertEquals(ErrorCode.PRODUCT_CREATION_FAILED, response.getData().get(1).getErrorCode());
+        assertNull(response.getData().get(2).getErrorCode());
+        assertTrue(productRepository.findById(response.getData().get(2).getId()).isPresent());
+    }
+
+    // A failure after the chunk committed must not replay it item by item, that would insert every row twice
+    @Test
+    public void testFailureAfterCommitDoesNotReplayChunk() {
+        doThrow(new IllegalStateException("feed down")).doCallRealMethod()
+                .when(productChangeFeed).publish(eq(ChangeType.CREATED), any(), argThat(p -> p != null && "Committed 1".equals(p.getName())));
+        List<Product> products = Arrays.asList(product("Committed 0", 0), product("Committed 1", 1), product("Committed 2", 2));
+
+        GenericResponse<List<BatchItemResult>> response = productBatchService.createProducts(products);
+
+        for (int i = 0; i < 3; i++) {
+            assertNull(response.getData().get(i).getErrorCode());
+            assertEquals("Committed " + i, productRepository.findById(response.getData().get(i).getId()).get().getName());
+        }
+        assertEquals(3, productRepository.findAll().stream().filter(p -> p.getName().startsWith("Committed ")).count());
+    }
+
+    @Test
+    public void testUpdateProducts() {
+        Long id = productService.createProduct(product("Before", 1)).getData().getId();
+        // warm the cache so the test also covers invalidation
+        productService.getProductById(id);
+
+        Product missingId = product("No id", 2);
+        Product unknown = product("Unknown", 3);
+        unknown.setId(Long.MAX_VALUE);
+        Product update = product("After", 4);
+        update.setId(id);
+        update.setDescription("Updated");
+
+        GenericResponse<List<BatchItemResult>> response =
+                productBatchService.updateProducts(Arrays.asList(missingId, unknown, update));
+
+        assertEquals(ErrorCode.BAD_REQUEST, response.getData().get(0).getErrorCode());
+        assertEquals(ErrorCode.PRODUCT_NOT_FOUND, response.getData().get(1).getErrorCode());
+        assertNull(response.getData().get(2).getErrorCode());
+        Product updated = productService.getProductById(id).getData();
+        assertEquals("After", updated.getName());
+        assertEquals("Updated", updated.getDescription());
+        assertEquals(4.0, updated.getPrice());
+    }
+
+    @Test
+    public void testUpdateProductsRejectsStaleVersion() {
+        Long id = productService.createProduct(product("Before", 1)).getData().getId();
+        Long version = productService.getProductById(id).getData().getVersion();
+
+        // another writer gets in first with the same version
+        Product first = product("First writer", 2);
+        first.setVersion(version);
+        assertNull(productService.updateProduct(id, first).getErrorCode());
+
+        Product second = product("Second writer", 3);
+        second.setId(id);
+        second.setVersion(version);
+        GenericResponse<List<BatchItemResult>> response = productBatchService.updateProducts(List.of(second));
+
+        assertEquals(ErrorCode.PRODUCT_VERSION_CONFLICT, response.getData().get(0).getErrorCode());
+        assertEquals(ErrorCode.PRODUCT_VERSION_CONFLICT, productService.updateProduct(id, second).getErrorCode());
+        assertEquals("First writer", productService.getProductById(id).getData().getName());
+    }
+
+    // One row change, one success: the repeat of an id in the same request is refused, not reported twice
+    @Test
+    public void testRepeatedIdsAreRefused() {
+        Long id = productService.createProduct(product("Repeated", 1)).getData().getId();
+        Product first = product("Repeated First", 2);
+        first.setId(id);
+        Product second = product("Repeated Second", 3);
+        second.setId(id);
+
+        GenericResponse<List<BatchItemResult>> updated = productBatchService.updateProducts(Arrays.asList(first, second));
+
+        assertNull(updated.getData().get(0).getErrorCode());
+        assertEquals(ErrorCode.BAD_REQUEST, updated.getData().get(1).getErrorCode());
+        assertEquals("Repeated First", productService.getProductById(id).getData().getName());
+
+        GenericResponse<List<BatchItemResult>> deleted = productBatchService.deleteProducts(Arrays.asList(id, id));
+
+        assertNull(deleted.getData().get(0).getErrorCode());
+        assertEquals(ErrorCode.BAD_REQUEST, deleted.getData().get(1).getErrorCode());
+        assertTrue(productRepository.findById(id).isEmpty());
+    }
+
+    @Test
+    public void testDeleteProducts() {
+        Long id1 = productService.createProduct(product("Delete 1", 1)).getData().getId();
+        Long id2 = productService.createProduct(product("Delete 2", 2)).getData().getId();
+
+        GenericResponse<List<BatchItemResult>> response =
+                productBatchService.deleteProducts(Arrays.asList(id1, Long.MAX_VALUE, id2));
+
+        assertNull(response.getData().get(0).getErrorCode());
+        assertEquals(ErrorCode.PRODUCT_NOT_FOUND, response.getData().get(1).getErrorCode());
+        assertNull(response.getData().get(2).getErrorCode());
+        assertEquals(ErrorCode.PRODUCT_NOT_FOUND, productService.getProductById(id1).getErrorCode());
+        assertEquals(ErrorCode.PRODUCT_NOT_FOUND, productService.getProductById(id2).getErrorCode());
+    }
+
+    @Test
+    public void testRejectsOversizedBatch() {
+        List<Long> ids = new ArrayList<>();
+        for (long i = 0; i < 21; i++) {
+            ids.add(i);
+        }
+
+        GenericResponse<List<BatchItemResult>> response = productBatchService.deleteProducts(ids);
+
+        assertNull(response.getData());
+        assertEquals(ErrorCode.BAD_REQUEST, response.getErrorCode());
+    }
+
+    private static Product product(String name, double price) {
+        Product product = new Product();
+        product.setName(name);
+        product.setPrice(price);
+        return product;
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.simpleWebApp;
+
+import com.example.simpleWebApp.cache.ProductCache;
+import com.example.simpleWebApp.model.GenericResponse;
+import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.service.ProductService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class ProductCacheTest {
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Test
+    public void testReadAfterUpdateIsNeverStale() {
+        Product product = new Product();
+        product.setName("Cached Product");
+        product.setPrice(10.0);
+        Long id = productService.createProduct(product).getData().getId();
+
+        for (int i = 1; i <= 50; i++) {
+            // warm the cache with the current row, then overwrite it
+            assertNotNull(productService.getProductById(id).getData());
+
+            Product details = new Product();
+            details.setName("Cached Product " + i);
+            details.setPrice(10.0 + i);
+            productService.updateProduct(id, details);
+
+            GenericResponse<Product> response = productService.getProductById(id);
+            assertEquals("Cached Product " + i, response.getData().getName());
+            assertEquals(10.0 + i, response.getData().getPrice());
+        }
+    }
+
+    @Test
+    public void testReadAfterDeleteIsNeverStale() {
+        Product product = new Product();
+        product.setName("Deleted Product");
+        Long id = productService.createProduct(product).getData().getId();
+        assertNotNull(productService.getProductById(id).getData());
+
+        productService.deleteProduct(id);
+
+        assertNull(productService.getProductById(id).getData());
+    }
+
+    @Test
+    public void testCacheStatsAreRecorded() {
+        Product product = new Product();
+        product.setName("Stats Product");
+        Long id = productService.createProduct(product).getData().getId();
+        productCache.invalidate(id);
+        long hits = productCache.stats().hitCount();
+        long misses = productCache.stats().missCount();
+
+        productService.getProductById(id);
+        productService.getProductById(id);
+
+        assertEquals(misses + 1, productCache.stats().missCount());
+        assertEquals(hits + 1, productCache.stats().hitCount());
+    }
+
+    @Test
+    public void testListVersionChangesOnEveryWrite() {
+        String before = productCache.listVersion();
+        Product product = new Product();
+        product.setName("Versioned Product");
+        Long id = productService.createProduct(product).getData().getId();
+        String created = productCache.listVersion();
+        assertNotEquals(before, created);
+
+        // reads, including cache misses, leave it alone
+        productCache.invalidate(id);
+        String invalidated = productCache.listVersion();
+        productService.getProductById(id);
+        assertEquals(invalidated, productCache.listVersion());
+
+        productService.deleteProduct(id);
+        assertNotEquals(invalidated, productCache.listVersion());
+    }
+
+    @Test
+    public void testWriteRacingWithSlowLoadWins() throws Exception {
+        ProductCache cache = new ProductCache(100, Duration.ofMinutes(1), Duration.ofSeconds(30));
+        Product oldRow = product(1L, "old");
+        Product newRow = product(1L, "new");
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // a reader has already fetched the old row from the database and is about to cache it
+        CompletableFuture<Optional<Product>> reader = CompletableFuture.supplyAsync(() -> cache.get(1L, key -> {
+            loading.countDown();
+            await(release);
+            return Optional.of(oldRow);
+        }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        // the writer commits and refreshes the cache while that load is still in flight
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> cache.put(newRow));
+        release.countDown();
+
+        assertEquals("old", reader.get(5, TimeUnit.SECONDS).get().getName());
+        writer.get(5, TimeUnit.SECONDS);
+        assertEquals("new", cache.get(1L, key -> Optional.of(oldRow)).get().getName());
+    }
+
+    // A read that starts after the write does not join the load that started before it
+    @Test
+    public void testReadAfterWriteDoesNotJoinOlderLoad() throws Exception {
+        ProductCache cache = new ProductCache(100, Duration.ofMinutes(1), Duration.ofSeconds(30));
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Optional<Product>> slow = CompletableFuture.supplyAsync(() -> cache.get(1L, key -> {
+            loading.countDown();
+            await(release);
+            return Optional.of(product(1L, "old"));
+        }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        cache.invalidate(1L);
+        CompletableFuture<Optional<Product>> after = CompletableFuture.supplyAsync(
+                () -> cache.get(1L, key -> Optional.of(product(1L, "new"))));
+        assertEquals("new", after.get(5, TimeUnit.SECONDS).get().getName());
+
+        release.countDown();
+        assertEquals("old", slow.get(5, TimeUnit.SECONDS).get().getName());
+        assertEquals("new", cache.get(1L, key -> Optional.of(product(1L, "other"))).get().getName());
+    }
+
+    // Writes to other products while a hot id is loaded neither split the burst nor throw its result away
+    @Test
+    public void testBurstOnOneIdIgnoresWritesToOthers() throws Exception {
+        ProductCache cache = new ProductCache(100, Duration.ofMinutes(1), Duration.ofSeconds(30));
+        AtomicInteger loads = new AtomicInteger();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread writer = Thread.ofPlatform().start(() -> {
+            for (long id = 2; writing.get(); id = id % 50 + 2) {
+                cache.put(product(id, "other"));
+            }
+        });
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            List<Object> results = SingleFlightTest.burst(() -> cache.get(1L, key -> {
+                loads.incrementAndGet();
+                SingleFlightTest.await(release);
+                return Optional.of(product(1L, "hot"));
+            }), release);
+
+            assertEquals(SingleFlightTest.CALLERS, results.size());
+            assertEquals(1, loads.get());
+            assertEquals("hot", cache.get(1L, key -> Optional.of(product(1L, "reloaded"))).get().getName());
+        } finally {
+            writing.set(false);
+            writer.join();
+        }
+    }
+
+    // No map lock is held while the database answers: other ids, and writes to this one, go on meanwhile
+    @Test
+    public void testSlowLoadHoldsNothing() throws Exception {
+        ProductCache cache = new ProductCache(100, Duration.ofMinutes(1), Duration.ofSeconds(30));
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Optional<Product>> slow = CompletableFuture.supplyAsync(() -> cache.get(1L, key -> {
+            loading.countDown();
+            await(release);
+            return Optional.of(product(1L, "slow"));
+        }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        for (long id = 2; id < 100; id++) {
+            assertEquals("other", cache.get(id, key -> Optional.of(product(key, "other"))).get().getName());
+        }
+        cache.invalidate(1L);
+        assertFalse(slow.isDone());
+
+        release.countDown();
+        assertEquals("slow", slow.get(5, TimeUnit.SECONDS).get().getName());
+    }
+
+    @Test
+    public void testAbsentIdIsCachedUntilWritten() {
+        ProductCache cache = new ProductCache(100, Duration.ofMinutes(1), Duration.ofSeconds(30));
+        AtomicInteger loads = new AtomicInteger();
+        Function<Long, Optional<Product>> loader = key -> {
+            loads.incrementAndGet();
+            return Optional.empty();
+        };
+
+        assertTrue(cache.get(1L, loader).isEmpty());
+        assertTrue(cache.get(1L, loader).isEmpty());
+        assertEquals(1, loads.get());
+
+        // a put for the same id replaces the cached miss
+        cache.put(product(1L, "created"));
+        assertEquals("created", cache.get(1L, loader).get().getName());
+
+        // a write that bypassed the cache drops every cached miss, it may have filled any of them
+        assertTrue(cache.get(2L, loader).isEmpty());
+        cache.markChanged();
+        assertTrue(cache.get(2L, loader).isEmpty());
+        assertEquals(3, loads.get());
+        assertEquals("created", cache.get(1L, loader).get().getName());
+    }
+
+    @Test
+    public void testAbsentIdExpiresSooner() throws Exception {
+        ProductCache cache = new ProductCache(100, Duration.ofMinutes(1), Duration.ofMillis(50));
+        AtomicInteger loads = new AtomicInteger();
+        Function<Long, Optional<Product>> loader = key -> {
+            loads.incrementAndGet();
+            return key == 1L ? Optional.of(product(1L, "present")) : Optional.empty();
+        };
+        cache.get(1L, loader);
+        cache.get(2L, loader);
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (loads.get() == 2) {
+            assertTrue(System.currentTimeMillis() < deadline, "absent id was never loaded again");
+            Thread.sleep(10);
+            cache.get(2L, loader);
+        }
+        cache.get(1L, loader);
+        assertEquals(3, loads.get());
+    }
+
+    private static Product product(Long id, String name) {
+        Product product = new Product();
+        product.setId(id);
+        product.setName(name);
+        return product;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
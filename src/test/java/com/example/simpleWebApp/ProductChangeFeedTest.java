@@ -0,0 +1,247 @@
+package com.example.simpleWebApp;
+
+import com.example.simpleWebApp.changes.ProductChangeFeed;
+import com.example.simpleWebApp.enums.ChangeType;
+import com.example.simpleWebApp.model.GenericResponse;
+import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.service.ProductService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Goes through a real Tomcat, the feed is only useful if events leave the server as they happen.
+// The ring is shrunk to 8 entries so a stalled subscriber is lapped quickly.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"products.changes.buffer-size=8", "products.rate-limit.enabled=false"})
+public class ProductChangeFeedTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductChangeFeed productChangeFeed;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    public void writesAreStreamedInOrderTest() throws Exception {
+        HttpResponse<Stream<String>> response = connect("/api/products/changes?after=" + productChangeFeed.position(), null);
+        try (Stream<String> lines = response.body()) {
+            assertEquals(200, response.statusCode());
+            assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/event-stream"));
+
+            Product product = productService.createProduct(product("Feed Product")).getData();
+            Product update = product("Feed Product Renamed");
+            productService.updateProduct(product.getId(), update);
+            productService.deleteProduct(product.getId());
+
+            List<Event> events = read(lines.iterator(), 3);
+            assertEquals(List.of("CREATED", "UPDATED", "DELETED"), events.stream().map(Event::name).toList());
+            assertEquals(events.get(0).offset() + 1, events.get(1).offset());
+            assertEquals(events.get(1).offset() + 1, events.get(2).offset());
+            assertEquals("Feed Product Renamed", events.get(1).data().get("product").get("name").asText());
+            assertEquals(product.getId().longValue(), events.get(2).data().get("id").asLong());
+            assertTrue(events.get(2).data().get("product") == null);
+        }
+    }
+
+    @Test
+    public void lastEventIdResumesAfterItTest() throws Exception {
+        long before = productChangeFeed.head();
+        String epoch = productChangeFeed.position().substring(0, productChangeFeed.position().indexOf('-'));
+        productService.createProduct(product("Missed Product"));
+        GenericResponse<Product> second = productService.createProduct(product("Resumed Product"));
+
+        HttpResponse<Stream<String>> response = connect("/api/products/changes", epoch + "-" + (before + 1));
+        try (Stream<String> lines = response.body()) {
+            Event event = read(lines.iterator(), 1).get(0);
+            assertEquals(epoch + "-" + (before + 2), event.id());
+            assertEquals("CREATED", event.name());
+            assertEquals(second.getData().getId().longValue(), event.data().get("id").asLong());
+        }
+    }
+
+    @Test
+    public void unknownOffsetGetsResetTest() throws Exception {
+        String position = productChangeFeed.position();
+        String epoch = position.substring(0, position.indexOf('-'));
+        HttpResponse<Stream<String>> response = connect("/api/products/changes", epoch + "-" + (productChangeFeed.head() + 1000));
+        try (Stream<String> lines = response.body()) {
+            Event event = read(lines.iterator(), 1).get(0);
+            assertEquals("RESET", event.name());
+            assertEquals(position, event.id());
+        }
+    }
+
+    // offsets start over on a restart, one from a previous run can be below this run's head and still mean nothing
+    @Test
+    public void offsetFromPreviousRunGetsResetTest() throws Exception {
+        productService.createProduct(product("Current Run Product"));
+        productService.createProduct(product("Another Current Run Product"));
+        String position = productChangeFeed.position();
+        String epoch = position.substring(0, position.indexOf('-'));
+        String previousRun = (Long.parseLong(epoch) - 60_000) + "-1";
+
+        HttpResponse<Stream<String>> response = connect("/api/products/changes", previousRun);
+        try (Stream<String> lines = response.body()) {
+            Event event = read(lines.iterator(), 1).get(0);
+            assertEquals("RESET", event.name());
+            assertEquals(position, event.id());
+        }
+    }
+
+    // EventSource is the main client, anything that does not ask for NDJSON gets the event stream
+    @Test
+    public void serverSentEventsAreTheDefaultTest() throws Exception {
+        for (String accept : new String[]{null, "*/*"}) {
+            HttpResponse<Stream<String>> response = connect("/api/products/changes?after=" + productChangeFeed.position(), null, accept);
+            try (Stream<String> lines = response.body()) {
+                assertEquals(200, response.statusCode());
+                assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/event-stream"), accept);
+            }
+        }
+    }
+
+    @Test
+    public void ndjsonLinesTest() throws Exception {
+        HttpResponse<Stream<String>> response = connect("/api/products/changes?after=" + productChangeFeed.position(), null,
+                "application/x-ndjson");
+        try (Stream<String> lines = response.body()) {
+            assertEquals(200, response.statusCode());
+            assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("application/x-ndjson"));
+
+            Product product = productService.createProduct(product("Crème Brûlée Dish")).getData();
+
+            JsonNode change = null;
+            for (Iterator<String> iterator = lines.iterator(); change == null && iterator.hasNext(); ) {
+                String line = iterator.next();
+                // blank lines are heartbeats
+                if (!line.isBlank()) {
+                    change = objectMapper.readTree(line);
+                }
+            }
+            assertEquals("CREATED", change.get("type").asText());
+            assertEquals(product.getId().longValue(), change.get("id").asLong());
+            assertEquals("Crème Brûlée Dish", change.get("product").get("name").asText());
+        }
+    }
+
+    @Test
+    public void stalledSubscriberIsDroppedTest() throws Exception {
+        double droppedBefore = meterRegistry.get("product.changes.dropped").counter().count();
+        try (Socket socket = new Socket()) {
+            // a small window so the server's writes block once the client stops reading
+            socket.setReceiveBufferSize(4096);
+            socket.connect(new InetSocketAddress("localhost", port));
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET /api/products/changes?after=" + productChangeFeed.position() + " HTTP/1.1\r\n"
+                    + "Host: localhost\r\nAccept: application/x-ndjson\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            assertTrue(reader.readLine().contains("200"));
+
+            // the writers never wait for it, they simply run past it
+            Product product = product("Stalled Product");
+            product.setId(1L);
+            product.setDescription("x".repeat(1024));
+            for (int i = 0; i < 20_000; i++) {
+                productChangeFeed.publish(ChangeType.UPDATED, 1L, product);
+            }
+
+            boolean reset = false;
+            for (String line = reader.readLine(); line != null && !reset; line = reader.readLine()) {
+                reset = line.contains("\"type\":\"RESET\"");
+            }
+            assertTrue(reset);
+        }
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (meterRegistry.get("product.changes.dropped").counter().count() == droppedBefore && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(droppedBefore + 1, meterRegistry.get("product.changes.dropped").counter().count());
+    }
+
+    private HttpResponse<Stream<String>> connect(String path, String lastEventId) throws Exception {
+        return connect(path, lastEventId, "text/event-stream");
+    }
+
+    // accept null sends no Accept header at all
+    private HttpResponse<Stream<String>> connect(String path, String lastEventId, String accept) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path));
+        if (accept != null) {
+            request.header("Accept", accept);
+        }
+        if (lastEventId != null) {
+            request.header("Last-Event-ID", lastEventId);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofLines());
+    }
+
+    // Collects count events, skipping heartbeat comments
+    private List<Event> read(Iterator<String> lines, int count) throws Exception {
+        List<Event> events = new ArrayList<>(count);
+        String id = null;
+        String name = null;
+        String data = null;
+        while (events.size() < count && lines.hasNext()) {
+            String line = lines.next();
+            if (line.startsWith("id:")) {
+                id = line.substring(3);
+            } else if (line.startsWith("event:")) {
+                name = line.substring(6);
+            } else if (line.startsWith("data:")) {
+                data = line.substring(5);
+            } else if (line.isEmpty() && data != null) {
+                events.add(new Event(id, name, objectMapper.readTree(data)));
+                data = null;
+            }
+        }
+        return events;
+    }
+
+    private static Product product(String name) {
+        Product product = new Product();
+        product.setName(name);
+        product.setDescription("Change feed test product");
+        product.setPrice(10.0);
+        return product;
+    }
+
+    private record Event(String id, String name, JsonNode data) {
+
+        long offset() {
+            return Long.parseLong(id.substring(id.indexOf('-') + 1));
+        }
+    }
+}
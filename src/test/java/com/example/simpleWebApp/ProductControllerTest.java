@@ -1,17 +1,33 @@
 package com.example.simpleWebApp;
 
+import com.example.simpleWebApp.changes.ProductChangeFeed;
 import com.example.simpleWebApp.controller.ProductController;
+import com.example.simpleWebApp.model.BatchItemResult;
 import com.example.simpleWebApp.model.GenericResponse;
 import com.example.simpleWebApp.enums.ErrorCode;
+import com.example.simpleWebApp.enums.ImportFormat;
 import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.model.ProductCacheStats;
+import com.example.simpleWebApp.model.ProductImportResult;
+import com.example.simpleWebApp.model.ProductPage;
+import com.example.simpleWebApp.model.ProductPrice;
+import com.example.simpleWebApp.model.ProductSummary;
+import com.example.simpleWebApp.service.ProductBatchService;
+import com.example.simpleWebApp.service.ProductExportService;
+import com.example.simpleWebApp.service.ProductImportService;
 import com.example.simpleWebApp.service.ProductService;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -21,6 +37,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 @WebMvcTest(ProductController.class)
 public class ProductControllerTest {
@@ -31,6 +48,18 @@ public class ProductControllerTest {
     @MockBean
     private ProductService productService;
 
+    @MockBean
+    private ProductBatchService productBatchService;
+
+    @MockBean
+    private ProductExportService productExportService;
+
+    @MockBean
+    private ProductChangeFeed productChangeFeed;
+
+    @MockBean
+    private ProductImportService productImportService;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -85,6 +114,99 @@ public class ProductControllerTest {
         verify(productService, times(1)).getAllProducts();
     }
 
+    @Test
+    public void getProductsPageTest() throws Exception {
+        Product product = new Product();
+        product.setId(1L);
+        product.setName("Product 1");
+
+        GenericResponse<ProductPage> response = new GenericResponse<>(new ProductPage(List.of(product), "Mg"));
+
+        when(productService.getProductsPage("MQ", 1)).thenReturn(response);
+
+        mockMvc.perform(get("/api/products/page").param("cursor", "MQ").param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.items[0].name").value("Product 1"))
+                .andExpect(jsonPath("$.data.next").value("Mg"))
+                .andDo(print());
+
+        verify(productService, times(1)).getProductsPage("MQ", 1);
+    }
+
+    @Test
+    public void getProductsPageBadRequestTest() throws Exception {
+        GenericResponse<ProductPage> response = new GenericResponse<>("Invalid cursor", ErrorCode.BAD_REQUEST);
+
+        when(productService.getProductsPage("bad", null)).thenReturn(response);
+
+        mockMvc.perform(get("/api/products/page").param("cursor", "bad"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.errorCode").value("BAD_REQUEST"))
+                .andDo(print());
+    }
+
+    @Test
+    public void streamAllProductsTest() throws Exception {
+        Product product1 = new Product();
+        product1.setId(1L);
+        product1.setName("Product 1");
+
+        Product product2 = new Product();
+        product2.setId(2L);
+        product2.setName("Product 2");
+
+        doAnswer(invocation -> {
+            Consumer<Product> consumer = invocation.getArgument(0);
+            consumer.accept(product1);
+            consumer.accept(product2);
+            return null;
+        }).when(productService).streamAllProducts(any());
+
+        MvcResult result = mockMvc.perform(get("/api/products/stream").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(1L, objectMapper.readValue(lines[0], Product.class).getId());
+        assertEquals("Product 2", objectMapper.readValue(lines[1], Product.class).getName());
+    }
+
+    @Test
+    public void exportNotReadyTest() throws Exception {
+        when(productExportService.getExport())
+                .thenReturn(new GenericResponse<>("Export is not ready yet", ErrorCode.SERVICE_UNAVAILABLE));
+
+        MvcResult result = mockMvc.perform(get("/api/products/export").header("Accept-Encoding", "gzip"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(jsonPath("$.errorCode").value("SERVICE_UNAVAILABLE"));
+    }
+
+    @Test
+    public void getCacheStatsTest() throws Exception {
+        GenericResponse<ProductCacheStats> response = new GenericResponse<>(
+                new ProductCacheStats(CacheStats.of(3, 1, 1, 0, 10, 2, 2), 5));
+
+        when(productService.getCacheStats()).thenReturn(response);
+
+        mockMvc.perform(get("/api/products/cache/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.hitCount").value(3))
+                .andExpect(jsonPath("$.data.missCount").value(1))
+                .andExpect(jsonPath("$.data.evictionCount").value(2))
+                .andExpect(jsonPath("$.data.estimatedSize").value(5))
+                .andDo(print());
+    }
+
     @Test
     public void getProductByIdTest() throws Exception {
         Product product = new Product();
@@ -106,6 +228,103 @@ public class ProductControllerTest {
         verify(productService, times(1)).getProductById(1L);
     }
 
+    @Test
+    public void getProductByIdNotModifiedTest() throws Exception {
+        Product product = new Product();
+        product.setId(1L);
+        product.setName("Test Product");
+        product.setVersion(3L);
+
+        when(productService.getProductById(1L)).thenReturn(new GenericResponse<>(product));
+
+        mockMvc.perform(get("/api/products/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1-3\""));
+
+        mockMvc.perform(get("/api/products/1").header("If-None-Match", "\"1-2\", \"1-3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"1-3\""))
+                .andExpect(content().string(""))
+                .andDo(print());
+    }
+
+    @Test
+    public void getAllProductsNotModifiedTest() throws Exception {
+        when(productService.getListETagVersion()).thenReturn("1700000000000-7");
+
+        mockMvc.perform(get("/api/products").header("If-None-Match", "\"1700000000000-7\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""))
+                .andDo(print());
+
+        verify(productService, never()).getAllProducts();
+    }
+
+    @Test
+    public void updateProductIfMatchTest() throws Exception {
+        Product details = new Product();
+        details.setName("Updated Product");
+        Product updated = new Product();
+        updated.setId(1L);
+        updated.setName("Updated Product");
+        updated.setVersion(4L);
+
+        when(productService.updateProduct(eq(1L), argThat(product -> Long.valueOf(3L).equals(product.getVersion()))))
+                .thenReturn(new GenericResponse<>(updated));
+
+        mockMvc.perform(put("/api/products/1")
+                        .header("If-Match", "\"1-3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(details)))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1-4\""))
+                .andDo(print());
+    }
+
+    @Test
+    public void updateProductIfMatchFailedTest() throws Exception {
+        when(productService.updateProduct(eq(1L), any(Product.class)))
+                .thenReturn(new GenericResponse<>("Product was modified concurrently", ErrorCode.PRODUCT_VERSION_CONFLICT));
+
+        mockMvc.perform(put("/api/products/1")
+                        .header("If-Match", "\"1-3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(jsonPath("$.errorCode").value("PRECONDITION_FAILED"));
+
+        // an ETag of another product can never match
+        mockMvc.perform(delete("/api/products/1").header("If-Match", "\"2-3\""))
+                .andExpect(status().isPreconditionFailed())
+                .andDo(print());
+
+        verify(productService, never()).deleteProduct(anyLong(), any());
+    }
+
+    // If-Match: * only holds while the product exists
+    @Test
+    public void ifMatchAnyOnMissingProductTest() throws Exception {
+        when(productService.updateProduct(eq(1L), any(Product.class)))
+                .thenReturn(new GenericResponse<>("Product not found", ErrorCode.PRODUCT_NOT_FOUND));
+        when(productService.deleteProduct(eq(1L), isNull()))
+                .thenReturn(new GenericResponse<>("Product not found", ErrorCode.PRODUCT_NOT_FOUND));
+
+        mockMvc.perform(put("/api/products/1")
+                        .header("If-Match", "*")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(jsonPath("$.errorCode").value("PRECONDITION_FAILED"));
+
+        mockMvc.perform(delete("/api/products/1").header("If-Match", "*"))
+                .andExpect(status().isPreconditionFailed())
+                .andDo(print());
+
+        // without the header a missing product is still a 404
+        mockMvc.perform(delete("/api/products/1"))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     public void getProductByIdNotFoundTest() throws Exception {
         GenericResponse<Product> response = new GenericResponse<>("Product not found", ErrorCode.PRODUCT_NOT_FOUND);
@@ -146,17 +365,110 @@ public class ProductControllerTest {
         verify(productService, times(1)).updateProduct(eq(1L), any(Product.class));
     }
 
+    @Test
+    public void searchProductsTest() throws Exception {
+        GenericResponse<List<ProductSummary>> response = new GenericResponse<>(List.of(new ProductSummary(1L, "Kettle", 20.0)));
+
+        when(productService.searchProducts("Ke", null, 10.0, null, "price,desc", 20)).thenReturn(response);
+
+        mockMvc.perform(get("/api/products/search?name=Ke&minPrice=10&sort=price,desc&size=20"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data[0].name").value("Kettle"))
+                .andExpect(jsonPath("$.data[0].description").doesNotExist())
+                .andDo(print());
+
+        verify(productService, times(1)).searchProducts("Ke", null, 10.0, null, "price,desc", 20);
+    }
+
+    @Test
+    public void getPricesTest() throws Exception {
+        GenericResponse<List<ProductPrice>> response = new GenericResponse<>(List.of(new ProductPrice(3L, 4.5)));
+
+        when(productService.getPrices(1.0, 10.0, 5)).thenReturn(response);
+
+        mockMvc.perform(get("/api/products/prices?minPrice=1&maxPrice=10&size=5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data[0].id").value(3))
+                .andExpect(jsonPath("$.data[0].price").value(4.5))
+                .andDo(print());
+
+        verify(productService, times(1)).getPrices(1.0, 10.0, 5);
+    }
+
+    @Test
+    public void importProductsTest() throws Exception {
+        GenericResponse<ProductImportResult> response = new GenericResponse<>(new ProductImportResult(2, 1, 0, 64, 5));
+
+        when(productImportService.importStream(any(), eq(ImportFormat.NDJSON), eq("catalog-1"))).thenReturn(response);
+
+        mockMvc.perform(post("/api/products/import").param("uploadId", "catalog-1")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"name\":\"A\",\"price\":1}\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.importedRows").value(2))
+                .andExpect(jsonPath("$.data.failedRows").value(1))
+                .andDo(print());
+
+        verify(productImportService, times(1)).importStream(any(), eq(ImportFormat.NDJSON), eq("catalog-1"));
+    }
+
+    @Test
+    public void importProductsUnsupportedTypeTest() throws Exception {
+        mockMvc.perform(post("/api/products/import")
+                        .contentType(MediaType.APPLICATION_XML)
+                        .content("<products/>"))
+                .andExpect(status().isUnsupportedMediaType());
+
+        verifyNoInteractions(productImportService);
+    }
+
+    @Test
+    public void patchProductTest() throws Exception {
+        Product patchedProduct = new Product();
+        patchedProduct.setId(1L);
+        patchedProduct.setName("Test Product");
+        patchedProduct.setPrice(175.0);
+
+        GenericResponse<Product> response = new GenericResponse<>(patchedProduct);
+
+        when(productService.patchProduct(1L, Map.of("price", 175.0))).thenReturn(response);
+
+        mockMvc.perform(patch("/api/products/1")
+                        .contentType("application/merge-patch+json")
+                        .content("{\"price\":175.0}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.name").value("Test Product"))
+                .andExpect(jsonPath("$.data.price").value(175.0))
+                .andDo(print());
+
+        verify(productService, times(1)).patchProduct(1L, Map.of("price", 175.0));
+    }
+
+    @Test
+    public void patchProductBadRequestTest() throws Exception {
+        GenericResponse<Product> response = new GenericResponse<>("price must be a number", ErrorCode.BAD_REQUEST);
+
+        when(productService.patchProduct(eq(1L), anyMap())).thenReturn(response);
+
+        mockMvc.perform(patch("/api/products/1")
+                        .contentType("application/merge-patch+json")
+                        .content("{\"price\":\"cheap\"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.errorCode").value("BAD_REQUEST"))
+                .andDo(print());
+    }
+
     @Test
     public void deleteProductTest() throws Exception {
         GenericResponse<Void> response = new GenericResponse<>(null);
 
-        when(productService.deleteProduct(1L)).thenReturn(response);
+        when(productService.deleteProduct(1L, null)).thenReturn(response);
 
         mockMvc.perform(delete("/api/products/1"))
                 .andExpect(status().isOk())
                 .andDo(print());
 
-        verify(productService, times(1)).deleteProduct(1L);
+        verify(productService, times(1)).deleteProduct(1L, null);
     }
 
 
@@ -164,7 +476,7 @@ public class ProductControllerTest {
     public void deleteProductNotFoundTest() throws Exception {
         GenericResponse<Void> response = new GenericResponse<>("Product not found", ErrorCode.PRODUCT_NOT_FOUND);
 
-        when(productService.deleteProduct(1L)).thenReturn(response);
+        when(productService.deleteProduct(1L, null)).thenReturn(response);
 
         mockMvc.perform(delete("/api/products/1"))
                 .andExpect(status().isNotFound())
@@ -172,6 +484,64 @@ public class ProductControllerTest {
                 .andExpect(jsonPath("$.errorCode").value("PRODUCT_NOT_FOUND"))
                 .andDo(print());
 
-        verify(productService, times(1)).deleteProduct(1L);
+        verify(productService, times(1)).deleteProduct(1L, null);
+    }
+
+    @Test
+    public void createProductsTest() throws Exception {
+        Product product1 = new Product();
+        product1.setName("Product 1");
+        Product product2 = new Product();
+        product2.setName("Product 2");
+
+        GenericResponse<List<BatchItemResult>> response = new GenericResponse<>(Arrays.asList(
+                new BatchItemResult(0, 1L),
+                new BatchItemResult(1, null, "Error creating product", ErrorCode.PRODUCT_CREATION_FAILED)));
+
+        when(productBatchService.createProducts(anyList())).thenReturn(response);
+
+        mockMvc.perform(post("/api/products/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Arrays.asList(product1, product2))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data[0].id").value(1L))
+                .andExpect(jsonPath("$.data[1].index").value(1))
+                .andExpect(jsonPath("$.data[1].errorCode").value("PRODUCT_CREATION_FAILED"))
+                .andDo(print());
+
+        verify(productBatchService, times(1)).createProducts(anyList());
+    }
+
+    @Test
+    public void updateProductsBadRequestTest() throws Exception {
+        GenericResponse<List<BatchItemResult>> response =
+                new GenericResponse<>("Batch must contain between 1 and 10000 items", ErrorCode.BAD_REQUEST);
+
+        when(productBatchService.updateProducts(anyList())).thenReturn(response);
+
+        mockMvc.perform(put("/api/products/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[]"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.errorCode").value("BAD_REQUEST"))
+                .andDo(print());
+    }
+
+    @Test
+    public void deleteProductsTest() throws Exception {
+        GenericResponse<List<BatchItemResult>> response = new GenericResponse<>(Arrays.asList(
+                new BatchItemResult(0, 1L),
+                new BatchItemResult(1, 2L, "Product not found", ErrorCode.PRODUCT_NOT_FOUND)));
+
+        when(productBatchService.deleteProducts(Arrays.asList(1L, 2L))).thenReturn(response);
+
+        mockMvc.perform(delete("/api/products/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[1, 2]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data[1].errorCode").value("PRODUCT_NOT_FOUND"))
+                .andDo(print());
+
+        verify(productBatchService, times(1)).deleteProducts(Arrays.asList(1L, 2L));
     }
 }
@@ -0,0 +1,125 @@
+package com.example.simpleWebApp;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Goes through a real Tomcat, MockMvc has neither sendfile nor server.compression
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "products.export.refresh-interval=100ms")
+public class ProductExportTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    public void exportIsServedGzippedTest() throws Exception {
+        long id = create("Export Product");
+
+        HttpResponse<byte[]> response = exportContaining(id);
+        assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElse(null));
+        assertEquals("Accept-Encoding", response.headers().firstValue("Vary").orElse(null));
+        assertEquals(response.body().length, response.headers().firstValueAsLong("Content-Length").orElse(-1));
+
+        // the stored snapshot is revalidated without being sent again
+        String etag = response.headers().firstValue("ETag").orElseThrow();
+        HttpResponse<byte[]> notModified = client.send(HttpRequest.newBuilder(uri("/api/products/export"))
+                        .header("Accept-Encoding", "gzip")
+                        .header("If-None-Match", etag)
+                        .build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(304, notModified.statusCode());
+    }
+
+    @Test
+    public void exportIsInflatedForClientsWithoutGzipTest() throws Exception {
+        long id = create("Plain Export Product");
+        exportContaining(id);
+
+        HttpResponse<byte[]> response = client.send(HttpRequest.newBuilder(uri("/api/products/export")).build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue("Content-Encoding").isEmpty());
+        assertTrue(contains(objectMapper.readTree(response.body()), id));
+    }
+
+    @Test
+    public void largeListIsCompressedTest() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            create("Compressed Product " + i);
+        }
+        HttpResponse<byte[]> response = client.send(HttpRequest.newBuilder(uri("/api/products"))
+                        .header("Accept-Encoding", "gzip")
+                        .build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(200, response.statusCode());
+        assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElse(null));
+        JsonNode body = objectMapper.readTree(gunzip(response.body()));
+        assertTrue(body.get("data").size() >= 50);
+    }
+
+    // The snapshot is rewritten in the background, so wait until it has caught up with the write
+    private HttpResponse<byte[]> exportContaining(long id) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (true) {
+            HttpResponse<byte[]> response = client.send(HttpRequest.newBuilder(uri("/api/products/export"))
+                            .header("Accept-Encoding", "gzip")
+                            .build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            assertEquals(200, response.statusCode());
+            if (contains(objectMapper.readTree(gunzip(response.body())), id)) {
+                return response;
+            }
+            assertTrue(System.currentTimeMillis() < deadline, "export never contained product " + id);
+            Thread.sleep(50);
+        }
+    }
+
+    private long create(String name) throws Exception {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri("/api/products"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"name\":\"" + name + "\",\"description\":\"Export test\",\"price\":5.0}"))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode());
+        return objectMapper.readTree(response.body()).at("/data/id").asLong();
+    }
+
+    private static boolean contains(JsonNode export, long id) {
+        for (JsonNode product : export.get("data")) {
+            if (product.get("id").asLong() == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] gunzip(byte[] body) throws Exception {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.simpleWebApp;
+
+import com.example.simpleWebApp.enums.ImportFormat;
+import com.example.simpleWebApp.model.ProductImportResult;
+import com.example.simpleWebApp.service.ProductImportService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// A 1M row CSV and the same rows as NDJSON imported into the prod profile's file database, with heap use
+// sampled after the import to show it does not grow with the file.
+// Run with: mvn test -Pload-test -Dtest=ProductImportLoadTest
+@Tag("load")
+public class ProductImportLoadTest {
+
+    private static final int ROWS = 1_000_000;
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    public void importMillionRows() throws Exception {
+        Path csv = dataDir.resolve("catalog.csv");
+        Path ndjson = dataDir.resolve("catalog.ndjson");
+        try (BufferedWriter csvWriter = Files.newBufferedWriter(csv); BufferedWriter ndjsonWriter = Files.newBufferedWriter(ndjson)) {
+            csvWriter.write("name,description,price\n");
+            for (int i = 0; i < ROWS; i++) {
+                double price = (i * 7919L % 100_000) / 100.0;
+                csvWriter.write("Supplier Product " + i + ",\"Catalog entry " + i + ", imported\"," + price + "\n");
+                ndjsonWriter.write("{\"name\":\"Supplier Product " + i + "\",\"description\":\"Catalog entry " + i
+                        + ", imported\",\"price\":" + price + "}\n");
+            }
+        }
+
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(SimpleWebAppApplication.class)
+                .properties("server.port=0", "products.db.path=" + dataDir.resolve("products"))
+                .profiles("prod");
+        try (ConfigurableApplicationContext context = builder.run()) {
+            ProductImportService productImportService = context.getBean(ProductImportService.class);
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+            System.out.printf("%-8s %10s %10s %12s %12s%n", "format", "rows", "ms", "rows/s", "heap MB");
+            for (ImportFormat format : ImportFormat.values()) {
+                ProductImportResult result = productImportService.importFile(format == ImportFormat.CSV ? csv : ndjson, format).getData();
+                assertEquals(ROWS, result.getImportedRows());
+                System.gc();
+                long heap = (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / (1024 * 1024);
+                System.out.printf("%-8s %10d %10d %12d %12d%n", format, result.getImportedRows(), result.getElapsedMillis(),
+                        result.getRowsPerSecond(), heap);
+            }
+            assertEquals(2 * ROWS, jdbcTemplate.queryForObject("select count(*) from product", Integer.class));
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.simpleWebApp;
+
+import com.example.simpleWebApp.enums.ErrorCode;
+import com.example.simpleWebApp.enums.ImportFormat;
+import com.example.simpleWebApp.index.ProductPriceIndex;
+import com.example.simpleWebApp.model.GenericResponse;
+import com.example.simpleWebApp.model.ProductImportResult;
+import com.example.simpleWebApp.service.ProductImportService;
+import com.example.simpleWebApp.service.ProductService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Chunks of 1KB with two parsed ahead, so even these small files go through many chunks and a full window
+@SpringBootTest(properties = {"products.import.chunk-size=1KB", "products.import.queue-capacity=2",
+        "products.import.parallelism=4", "products.import.batch-size=100", "products.price-index.enabled=true",
+        "products.import.max-upload-size=16KB"})
+public class ProductImportTest {
+
+    @Autowired
+    private ProductImportService productImportService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductPriceIndex productPriceIndex;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    public void testCsvImport() throws Exception {
+        String listVersion = productService.getListVersion();
+        Path file = directory.resolve("catalog.csv");
+        // columns out of order behind a byte order mark, as a spreadsheet would save them
+        Files.writeString(file, "\uFEFFprice,name,description\r\n"
+                + "12.5,Csv Kettle,\"Steel, 1.7 l\"\r\n"
+                + "\r\n"
+                + "3,\"Csv \"\"Quoted\"\" Mug\",\n"
+                + "free,Csv Broken Price,Not a number\n"
+                + "4,\"Csv Unterminated,Oops\n"
+                + "5," + "x".repeat(300) + ",Too long\n"
+                + "7,Csv Last Line,No newline at the end");
+
+        ProductImportResult result = productImportService.importFile(file, ImportFormat.CSV).getData();
+
+        assertEquals(3, result.getImportedRows());
+        assertEquals(3, result.getFailedRows());
+        assertEquals(Files.size(file), result.getBytes());
+        assertEquals("Steel, 1.7 l", jdbcTemplate.queryForObject("select description from product where name = 'Csv Kettle'", String.class));
+        assertEquals(12.5, jdbcTemplate.queryForObject("select price from product where name = 'Csv Kettle'", Double.class));
+        assertNull(jdbcTemplate.queryForObject("select description from product where name = 'Csv \"Quoted\" Mug'", String.class));
+        assertEquals(1, count("Csv Last Line"));
+        // caches and the price index know about rows that bypassed Hibernate
+        assertNotEquals(listVersion, productService.getListVersion());
+        assertTrue(productService.getPrices(12.5, 12.5, 10).getData().stream()
+                .anyMatch(price -> price.getId().equals(jdbcTemplate.queryForObject("select id from product where name = 'Csv Kettle'", Long.class))));
+    }
+
+    @Test
+    public void testNdjsonImportAcrossManyChunks() throws Exception {
+        Path file = directory.resolve("catalog.ndjson");
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 2_000; i++) {
+            lines.append("{\"id\":1,\"name\":\"Ndjson Product ").append(i).append("\",\"description\":\"Imported\",\"price\":").append(i).append("}\n");
+        }
+        lines.append("{\"name\":\"Ndjson Broken\"\n");
+        Files.writeString(file, lines);
+
+        ProductImportResult result = productImportService.importFile(file, ImportFormat.NDJSON).getData();
+
+        assertEquals(2_000, result.getImportedRows());
+        assertEquals(1, result.getFailedRows());
+        assertEquals(2_000, count("Ndjson Product %"));
+        // the client's id is ignored, every row got its own
+        assertEquals(2_000, jdbcTemplate.queryForObject("select count(distinct id) from product where name like 'Ndjson Product %'", Integer.class));
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from product_import", Integer.class));
+        assertEquals(productPriceIndex.size(), jdbcTemplate.queryForObject("select count(*) from product", Integer.class));
+    }
+
+    @Test
+    public void testResumesFromCheckpoint() throws Exception {
+        Path file = directory.resolve("resumed.csv");
+        StringBuilder csv = new StringBuilder("name,price\n");
+        long resumeAt = 0;
+        for (int i = 0; i < 1_000; i++) {
+            if (i == 600) {
+                resumeAt = csv.toString().getBytes(StandardCharsets.UTF_8).length;
+            }
+            csv.append("Resumed Product ").append(i).append(',').append(i).append('\n');
+        }
+        Files.writeString(file, csv);
+        // as if an earlier run had committed the first 600 rows and stopped
+        jdbcTemplate.update("insert into product_import (source, file_size, committed_offset, imported_rows) values (?, ?, ?, ?)",
+                file.toAbsolutePath().normalize().toString(), Files.size(file), resumeAt, 600);
+
+        ProductImportResult result = productImportService.importFile(file, ImportFormat.CSV).getData();
+
+        assertEquals(resumeAt, result.getResumedFrom());
+        assertEquals(400, result.getImportedRows());
+        assertEquals(0, count("Resumed Product 599"));
+        assertEquals(1, count("Resumed Product 600"));
+        assertEquals(1, count("Resumed Product 999"));
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from product_import", Integer.class));
+    }
+
+    @Test
+    public void testUploadLeavesNothingBehind() {
+        byte[] body = "name,price\nUploaded Product,9.5\n".getBytes(StandardCharsets.UTF_8);
+
+        GenericResponse<ProductImportResult> response = productImportService.importStream(new ByteArrayInputStream(body), ImportFormat.CSV);
+
+        assertEquals(1, response.getData().getImportedRows());
+        assertEquals(1, count("Uploaded Product"));
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from product_import", Integer.class));
+    }
+
+    // An upload that fails after some chunks leaves none of them behind, so sending it again imports every row once
+    @Test
+    public void testFailedUploadCommitsNothing() {
+        StringBuilder csv = new StringBuilder("name,price\n");
+        for (int i = 0; i < 500; i++) {
+            csv.append("Atomic Product ").append(i).append(",1\n");
+        }
+        csv.append("Atomic Poison,1\n");
+        byte[] body = csv.toString().getBytes(StandardCharsets.UTF_8);
+
+        // the last row is refused by the database, long after the first chunks were written
+        jdbcTemplate.execute("alter table product add constraint no_atomic_poison check (name <> 'Atomic Poison')");
+        try {
+            GenericResponse<ProductImportResult> failed = productImportService.importStream(new ByteArrayInputStream(body), ImportFormat.CSV);
+
+            assertEquals(ErrorCode.PRODUCT_CREATION_FAILED, failed.getErrorCode());
+            assertEquals(0, count("Atomic Product %"));
+        } finally {
+            jdbcTemplate.execute("alter table product drop constraint no_atomic_poison");
+        }
+
+        GenericResponse<ProductImportResult> retried = productImportService.importStream(new ByteArrayInputStream(body), ImportFormat.CSV);
+
+        assertEquals(501, retried.getData().getImportedRows());
+        assertEquals(500, count("Atomic Product %"));
+        assertEquals(1, count("Atomic Product 499"));
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from product_import", Integer.class));
+    }
+
+    // With an uploadId the chunks before the failure stay committed, and the retry picks up after them
+    @Test
+    public void testUploadWithIdResumesAfterFailure() {
+        StringBuilder csv = new StringBuilder("name,price\n");
+        for (int i = 0; i < 500; i++) {
+            csv.append("Resumable Product ").append(i).append(",1\n");
+        }
+        csv.append("Resumable Poison,1\n");
+        byte[] body = csv.toString().getBytes(StandardCharsets.UTF_8);
+
+        jdbcTemplate.execute("alter table product add constraint no_resumable_poison check (name <> 'Resumable Poison')");
+        try {
+            GenericResponse<ProductImportResult> failed = productImportService.importStream(new ByteArrayInputStream(body), ImportFormat.CSV, "resumable-1");
+
+            assertEquals(ErrorCode.PRODUCT_CREATION_FAILED, failed.getErrorCode());
+            assertTrue(count("Resumable Product %") > 0);
+        } finally {
+            jdbcTemplate.execute("alter table product drop constraint no_resumable_poison");
+        }
+        int committed = count("Resumable Product %");
+
+        GenericResponse<ProductImportResult> retried = productImportService.importStream(new ByteArrayInputStream(body), ImportFormat.CSV, "resumable-1");
+
+        assertTrue(retried.getData().getResumedFrom() > 0);
+        assertEquals(501 - committed, retried.getData().getImportedRows());
+        assertEquals(500, count("Resumable Product %"));
+        assertEquals(1, count("Resumable Product 499"));
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from product_import", Integer.class));
+    }
+
+    // Without an uploadId the whole upload is one transaction, so its size is capped
+    @Test
+    public void testOversizedUploadNeedsId() {
+        byte[] body = ("name,price\n" + "Oversized Product,1\n".repeat(1_000)).getBytes(StandardCharsets.UTF_8);
+
+        GenericResponse<ProductImportResult> response = productImportService.importStream(new ByteArrayInputStream(body), ImportFormat.CSV);
+
+        assertEquals(ErrorCode.BAD_REQUEST, response.getErrorCode());
+        assertEquals(0, count("Oversized Product"));
+        assertEquals(ErrorCode.BAD_REQUEST, productImportService.importStream(new ByteArrayInputStream(body), ImportFormat.CSV, "no spaces").getErrorCode());
+    }
+
+    @Test
+    public void testCsvWithoutRequiredColumns() throws Exception {
+        Path file = directory.resolve("headless.csv");
+        Files.writeString(file, "title,cost\nNo Header Product,1\n");
+
+        GenericResponse<ProductImportResult> response = productImportService.importFile(file, ImportFormat.CSV);
+
+        assertEquals(ErrorCode.BAD_REQUEST, response.getErrorCode());
+        assertEquals(0, count("No Header Product"));
+    }
+
+    private int count(String namePattern) {
+        List<Integer> counts = jdbcTemplate.queryForList("select count(*) from product where name like ?", Integer.class, namePattern);
+        return counts.get(0);
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.simpleWebApp;
+
+import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.writebehind.ProductJournal;
+import com.example.simpleWebApp.writebehind.ProductWrite;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProductJournalTest {
+
+    private static final int CAPACITY = 4096;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testReplayReturnsAppendedRecords() throws Exception {
+        Path path = dir.resolve("products.journal");
+        try (ProductJournal journal = new ProductJournal(path, CAPACITY, false)) {
+            assertTrue(journal.replay().isEmpty());
+            assertTrue(journal.append(create(1L, 0L, "Käse", null, 2.5)));
+            assertTrue(journal.append(new ProductWrite(product(2L, 3L, "Bread", "Sourdough", 4.0), false)));
+        }
+
+        try (ProductJournal journal = new ProductJournal(path, CAPACITY, false)) {
+            List<ProductWrite> writes = journal.replay();
+            List<Product> products = writes.stream().map(ProductWrite::product).toList();
+
+            assertEquals(2, products.size());
+            assertTrue(writes.get(0).create());
+            assertFalse(writes.get(1).create());
+            assertEquals("Käse", products.get(0).getName());
+            assertNull(products.get(0).getDescription());
+            assertEquals(2L, products.get(1).getId());
+            assertEquals(3L, products.get(1).getVersion());
+            assertEquals("Sourdough", products.get(1).getDescription());
+            assertEquals(4.0, products.get(1).getPrice());
+        }
+    }
+
+    @Test
+    public void testReplayStopsAtTornRecord() throws Exception {
+        Path path = dir.resolve("products.journal");
+        int second;
+        try (ProductJournal journal = new ProductJournal(path, CAPACITY, false)) {
+            journal.replay();
+            journal.append(create(1L, 0L, "First", null, 1.0));
+            second = journal.position();
+            journal.append(create(2L, 0L, "Second", null, 2.0));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            // flip a payload byte of the second record, as if the crash happened halfway through writing it
+            file.seek(second + 12);
+            file.write(0x7f);
+        }
+
+        try (ProductJournal journal = new ProductJournal(path, CAPACITY, false)) {
+            List<Product> products = journal.replay().stream().map(ProductWrite::product).toList();
+
+            assertEquals(1, products.size());
+            assertEquals("First", products.get(0).getName());
+            // the next append overwrites the torn record
+            assertTrue(journal.append(create(3L, 0L, "Third", null, 3.0)));
+        }
+        try (ProductJournal journal = new ProductJournal(path, CAPACITY, false)) {
+            assertEquals(List.of(1L, 3L), journal.replay().stream().map(write -> write.product().getId()).toList());
+        }
+    }
+
+    @Test
+    public void testCheckpointSkipsFlushedRecords() throws Exception {
+        Path path = dir.resolve("products.journal");
+        try (ProductJournal journal = new ProductJournal(path, CAPACITY, false)) {
+            journal.replay();
+            journal.append(create(1L, 0L, "Flushed", null, 1.0));
+            journal.append(create(2L, 0L, "Flushed", null, 1.0));
+            int flushedTo = journal.position();
+            journal.append(create(3L, 0L, "Pending", null, 1.0));
+
+            journal.checkpoint(flushedTo);
+        }
+        try (ProductJournal journal = new ProductJournal(path, CAPACITY, false)) {
+            List<ProductWrite> writes = journal.replay();
+            assertEquals(List.of(3L), writes.stream().map(write -> write.product().getId()).toList());
+
+            journal.checkpoint(journal.position());
+        }
+        try (ProductJournal journal = new ProductJournal(path, CAPACITY, false)) {
+            assertTrue(journal.replay().isEmpty());
+        }
+    }
+
+    @Test
+    public void testAppendFailsWhenFull() throws Exception {
+        try (ProductJournal journal = new ProductJournal(dir.resolve("products.journal"), 128, false)) {
+            journal.replay();
+            assertTrue(journal.append(create(1L, 0L, "Fits", null, 1.0)));
+            assertFalse(journal.append(create(2L, 0L, "Does not fit any more", "x".repeat(64), 1.0)));
+        }
+    }
+
+    private static ProductWrite create(Long id, Long version, String name, String description, double price) {
+        return new ProductWrite(product(id, version, name, description, price), true);
+    }
+
+    private static Product product(Long id, Long version, String name, String description, double price) {
+        Product product = new Product();
+        product.setId(id);
+        product.setVersion(version);
+        product.setName(name);
+        product.setDescription(description);
+        product.setPrice(price);
+        return product;
+    }
+}
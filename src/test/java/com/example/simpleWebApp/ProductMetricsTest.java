@@ -0,0 +1,51 @@
+package com.example.simpleWebApp;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.hamcrest.Matchers.containsString;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+public class ProductMetricsTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void testServiceTimersAndErrorCounters() throws Exception {
+        double notFound = meterRegistry.get("product.errors").tag("code", "PRODUCT_NOT_FOUND").counter().count();
+
+        mockMvc.perform(get("/api/products/{id}", Long.MAX_VALUE)).andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/products")).andExpect(status().isOk());
+
+        assertEquals(notFound + 1, meterRegistry.get("product.errors").tag("code", "PRODUCT_NOT_FOUND").counter().count());
+        assertTrue(meterRegistry.get("product.service").tag("method", "getProductById").timer().count() >= 1);
+        assertTrue(meterRegistry.get("product.service").tag("method", "getAllProducts").timer().count() >= 1);
+    }
+
+    @Test
+    public void testPrometheusScrape() throws Exception {
+        mockMvc.perform(get("/api/products")).andExpect(status().isOk());
+
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("product_service_seconds_bucket")))
+                .andExpect(content().string(containsString("product_errors_total")))
+                .andExpect(content().string(containsString("hikaricp_connections_active")))
+                .andExpect(content().string(containsString("hibernate_statements_total")));
+    }
+}
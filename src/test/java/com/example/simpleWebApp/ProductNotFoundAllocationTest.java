@@ -0,0 +1,56 @@
+package com.example.simpleWebApp;
+
+import com.example.simpleWebApp.enums.ErrorCode;
+import com.example.simpleWebApp.model.GenericResponse;
+import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.service.ProductService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.AopTestUtils;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Looking up an id that does not exist, once the miss is cached, must not allocate: the response is the shared
+// not-found instance and the lookup is one cache hit. Measured on the service itself, the @Timed proxy around it
+// allocates its timer sample like the HTTP layer allocates its request. ProductServiceBenchmark.getMissingProductById
+// shows the same with -prof gc.
+@SpringBootTest
+public class ProductNotFoundAllocationTest {
+
+    private static final int WARMUP = 200_000;
+    private static final int MEASURED = 100_000;
+    private static final Long MISSING_ID = Long.MAX_VALUE - 1;
+
+    @Autowired
+    private ProductService productService;
+
+    @Test
+    public void notFoundDoesNotAllocateTest() {
+        ProductService target = AopTestUtils.getUltimateTargetObject(productService);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+
+        GenericResponse<Product> first = target.getProductById(MISSING_ID);
+        assertEquals(ErrorCode.PRODUCT_NOT_FOUND, first.getErrorCode());
+        // enough calls for the JIT to compile the path
+        for (int i = 0; i < WARMUP; i++) {
+            target.getProductById(MISSING_ID);
+        }
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED; i++) {
+            assertSame(first, target.getProductById(MISSING_ID));
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        // under a byte per call: no object per lookup, what is left is Caffeine now and then scheduling its
+        // read buffer drain, a small task every few hundred reads
+        assertTrue(allocated < MEASURED, String.format("allocated %d bytes over %d lookups, %.3f bytes/op",
+                allocated, MEASURED, (double) allocated / MEASURED));
+    }
+}
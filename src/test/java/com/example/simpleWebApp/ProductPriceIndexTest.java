@@ -0,0 +1,275 @@
+package com.example.simpleWebApp;
+
+import com.example.simpleWebApp.enums.ChangeType;
+import com.example.simpleWebApp.index.ProductPriceIndex;
+import com.example.simpleWebApp.model.BatchItemResult;
+import com.example.simpleWebApp.model.GenericResponse;
+import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.model.ProductPrice;
+import com.example.simpleWebApp.repository.ProductRepository;
+import com.example.simpleWebApp.service.ProductBatchService;
+import com.example.simpleWebApp.service.ProductService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = "products.price-index.enabled=true")
+public class ProductPriceIndexTest {
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductBatchService productBatchService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductPriceIndex productPriceIndex;
+
+    @Test
+    public void testIndexFollowsWrites() {
+        Long created = productService.createProduct(product("Indexed Product", 30.0)).getData().getId();
+        Long updated = productService.createProduct(product("Updated Product", 31.0)).getData().getId();
+        Long patched = productService.createProduct(product("Patched Product", 32.0)).getData().getId();
+        Long deleted = productService.createProduct(product("Deleted Product", 33.0)).getData().getId();
+        List<BatchItemResult> batch = productBatchService.createProducts(List.of(product("Batch Product", 34.0), product("Batch Product", 34.0))).getData();
+
+        productService.updateProduct(updated, product("Updated Product", 3.5));
+        productService.patchProduct(patched, Map.of("price", 1000.0));
+        productService.deleteProduct(deleted);
+        Product batchUpdate = product("Batch Product", 0.25);
+        batchUpdate.setId(batch.get(1).getId());
+        productBatchService.updateProducts(List.of(batchUpdate));
+
+        assertEquals(expected(), indexed());
+        assertTrue(prices(30.0, 30.0).contains(created));
+        assertTrue(prices(1000.0, 1000.0).contains(patched));
+        assertFalse(prices(33.0, 33.0).contains(deleted));
+        assertEquals(List.of(batch.get(0).getId()), prices(34.0, 34.0));
+    }
+
+    @Test
+    public void testRebuildMatchesDatabase() {
+        productService.createProduct(product("Rebuilt Product", 12.0));
+
+        productPriceIndex.rebuild();
+
+        assertTrue(productPriceIndex.isReady());
+        assertEquals(expected(), indexed());
+    }
+
+    @Test
+    public void testServiceAnswersFromIndex() {
+        Long cheap = productService.createProduct(product("Cheapest Product", -50.0)).getData().getId();
+        Long cheaper = productService.createProduct(product("Cheaper Product", -60.0)).getData().getId();
+
+        GenericResponse<List<ProductPrice>> response = productService.getPrices(null, -40.0, 2);
+
+        assertEquals(List.of(cheaper, cheap), response.getData().stream().map(ProductPrice::getId).toList());
+        assertEquals(-60.0, response.getData().get(0).getPrice());
+        productService.deleteProduct(cheap);
+        productService.deleteProduct(cheaper);
+    }
+
+    // Enough entries for many blocks to split and empty, checked against a plain sorted copy after every round
+    @Test
+    public void testBlocksStaySortedThroughSplitsAndRemovals() {
+        ProductPriceIndex index = new ProductPriceIndex();
+        Map<Long, Double> expected = new HashMap<>();
+        Set<Long> removed = new HashSet<>();
+        Random random = new Random(42);
+        long version = 0;
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 2_000; i++) {
+                long id = 1 + random.nextInt(10_000);
+                double price = random.nextInt(500);
+                index.put(id, price, version++);
+                // a deleted id stays deleted until the next rebuild
+                if (!removed.contains(id)) {
+                    expected.put(id, price);
+                }
+            }
+            for (int i = 0; i < 50; i++) {
+                long id = 1 + random.nextInt(10_000);
+                index.remove(id);
+                expected.remove(id);
+                removed.add(id);
+            }
+            List<Long> sorted = expected.entrySet().stream()
+                    .sorted(Map.Entry.<Long, Double>comparingByValue().thenComparing(Map.Entry.comparingByKey()))
+                    .map(Map.Entry::getKey)
+                    .toList();
+            long[] ids = new long[sorted.size() + 1];
+            assertEquals(sorted.size(), index.range(-Double.MAX_VALUE, Double.MAX_VALUE, ids, new double[ids.length]));
+            assertEquals(sorted, Arrays.stream(ids, 0, sorted.size()).boxed().toList());
+            assertEquals(sorted.size(), index.size());
+            List<Long> narrow = sorted.stream().filter(id -> expected.get(id) >= 100 && expected.get(id) <= 120).toList();
+            assertEquals(narrow.size(), index.range(100, 120, ids, new double[ids.length]));
+            assertEquals(narrow, Arrays.stream(ids, 0, narrow.size()).boxed().toList());
+        }
+        // emptying every block leaves an index that still takes inserts
+        expected.keySet().forEach(index::remove);
+        assertEquals(0, index.size());
+        assertEquals(0, index.range(-Double.MAX_VALUE, Double.MAX_VALUE, new long[1], new double[1]));
+        index.put(20_000, 1.0, 0);
+        assertEquals(1, index.range(-Double.MAX_VALUE, Double.MAX_VALUE, new long[1], new double[1]));
+    }
+
+    // The scan holds no lock: reads and writes go on during it, and the writes end up on top of what it read
+    @Test
+    public void testRebuildScansWithoutTheLock() throws Exception {
+        ProductPriceIndex index = new ProductPriceIndex();
+        ProductRepository repository = mock(ProductRepository.class);
+        CountDownLatch scanning = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(repository.findPriceIndexEntries()).thenAnswer(invocation -> {
+            scanning.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return List.<Object[]>of(new Object[]{1L, 10.0, 0L}, new Object[]{2L, 20.0, 0L}, new Object[]{3L, 30.0, 0L});
+        });
+        ReflectionTestUtils.setField(index, "productRepository", repository);
+        index.put(2L, 20.0, 0);
+
+        CompletableFuture<Void> rebuild = CompletableFuture.runAsync(index::rebuild);
+        assertTrue(scanning.await(5, TimeUnit.SECONDS));
+        index.put(4L, 40.0, 0);
+        index.put(1L, 15.0, 1);
+        index.remove(3L);
+        long[] ids = new long[8];
+        double[] prices = new double[8];
+        assertEquals(3, index.range(0, 100, ids, prices));
+        assertFalse(rebuild.isDone());
+
+        release.countDown();
+        rebuild.get(5, TimeUnit.SECONDS);
+
+        assertEquals(3, index.range(0, 100, ids, prices));
+        assertArrayEquals(new long[]{1L, 2L, 4L}, Arrays.copyOf(ids, 3));
+        assertArrayEquals(new double[]{15.0, 20.0, 40.0}, Arrays.copyOf(prices, 3));
+    }
+
+    // A tombstone only has to outlast the writes that could still arrive late, then it is dropped
+    @Test
+    public void testOldTombstonesAreDropped() {
+        AtomicLong clock = new AtomicLong();
+        ProductPriceIndex index = new ProductPriceIndex(clock::get);
+        for (long id = 1; id <= 5_000; id++) {
+            index.put(id, id, 0);
+            index.remove(id);
+        }
+        assertEquals(5_000, index.tombstones());
+        index.put(1L, 1.0, 1);
+        assertEquals(0, index.size());
+
+        clock.addAndGet(61_000);
+        index.put(10_000L, 1.0, 0);
+        index.remove(10_000L);
+
+        assertEquals(1, index.tombstones());
+        assertEquals(0, index.size());
+        // the young one still keeps its late write out
+        index.put(10_000L, 1.0, 1);
+        assertEquals(0, index.size());
+    }
+
+    // Two updates of the same product applied in the reverse order of their commits: the older one is dropped
+    @Test
+    public void testOlderVersionDoesNotOverwrite() {
+        Product product = productService.createProduct(product("Reordered Product", 40.0)).getData();
+        Product newer = product("Reordered Product", 42.0);
+        newer.setVersion(2L);
+        Product older = product("Reordered Product", 41.0);
+        older.setVersion(1L);
+
+        productPriceIndex.apply(ChangeType.UPDATED, product.getId(), newer);
+        productPriceIndex.apply(ChangeType.UPDATED, product.getId(), older);
+
+        assertTrue(prices(42.0, 42.0).contains(product.getId()));
+        assertFalse(prices(41.0, 41.0).contains(product.getId()));
+
+        // and a late write for a deleted product does not bring it back
+        productPriceIndex.apply(ChangeType.DELETED, product.getId(), null);
+        newer.setVersion(3L);
+        productPriceIndex.apply(ChangeType.UPDATED, product.getId(), newer);
+        assertFalse(indexed().contains(product.getId()));
+        productPriceIndex.rebuild();
+    }
+
+    // Optimistic reads run while writers shift the arrays, every result they return must still be sorted
+    @Test
+    public void testReadsDuringWritesStaySorted() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ids.add(productService.createProduct(product("Concurrent Product " + i, i)).getData().getId());
+        }
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            for (int round = 0; round < 20_000; round++) {
+                long id = ids.get(round % ids.size());
+                productPriceIndex.put(id, (round * 7919) % 100);
+            }
+            writing.set(false);
+        });
+        long[] outIds = new long[64];
+        double[] outPrices = new double[64];
+        while (writing.get()) {
+            int found = productPriceIndex.range(0, 100, outIds, outPrices);
+            for (int i = 1; i < found; i++) {
+                assertTrue(outPrices[i - 1] <= outPrices[i]);
+            }
+        }
+        writer.join();
+        // put straight into the index, so bring it back in line with the database for the other tests
+        productPriceIndex.rebuild();
+    }
+
+    private List<Long> expected() {
+        return productRepository.findPrices(-Double.MAX_VALUE, Double.MAX_VALUE, Limit.unlimited()).stream()
+                .map(ProductPrice::getId)
+                .toList();
+    }
+
+    private List<Long> indexed() {
+        return prices(-Double.MAX_VALUE, Double.MAX_VALUE);
+    }
+
+    private List<Long> prices(double min, double max) {
+        long[] ids = new long[productPriceIndex.size() + 1];
+        int found = productPriceIndex.range(min, max, ids, new double[ids.length]);
+        List<Long> result = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            result.add(ids[i]);
+        }
+        return result;
+    }
+
+    private static Product product(String name, double price) {
+        Product product = new Product();
+        product.setName(name);
+        product.setDescription("Price index test product");
+        product.setPrice(price);
+        return product;
+    }
+}
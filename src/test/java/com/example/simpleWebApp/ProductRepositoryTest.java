@@ -1,15 +1,21 @@
 package com.example.simpleWebApp;
 
 import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.model.ProductSummary;
 import com.example.simpleWebApp.repository.ProductRepository;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -85,4 +91,111 @@ public class ProductRepositoryTest {
 
         assertFalse(deletedProduct.isPresent());
     }
+
+    @Test
+    public void testKeysetPagingAndStreaming() {
+        for (int i = 1; i <= 5; i++) {
+            Product product = new Product();
+            product.setName("Product " + i);
+            product.setPrice(i);
+            productRepository.save(product);
+        }
+
+        List<Product> firstPage = productRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(2));
+        assertEquals(2, firstPage.size());
+        assertEquals("Product 1", firstPage.get(0).getName());
+
+        List<Product> secondPage = productRepository.findByIdGreaterThanOrderByIdAsc(firstPage.get(1).getId(), Limit.of(2));
+        assertEquals(2, secondPage.size());
+        assertEquals("Product 3", secondPage.get(0).getName());
+
+        try (Stream<Product> products = productRepository.streamAllByOrderByIdAsc()) {
+            assertEquals(5, products.count());
+        }
+    }
+
+    @Test
+    public void testSingleStatementUpdateAndDelete() {
+        Product product = new Product();
+        product.setName("Test Product");
+        product.setPrice(100.0);
+        Long id = productRepository.saveAndFlush(product).getId();
+
+        assertEquals(1, productRepository.updateDetails(id, "Updated Product", "Updated Description", 200.0, 0L));
+        // the client that read version 0 is now stale
+        assertEquals(0, productRepository.updateDetails(id, "Lost Update", null, 0.0, 0L));
+        assertEquals(1, productRepository.updateDetails(id, "Unchecked Update", null, 300.0, null));
+
+        Product updated = productRepository.findById(id).get();
+        assertEquals("Unchecked Update", updated.getName());
+        assertEquals(2L, updated.getVersion());
+
+        assertEquals(0, productRepository.deleteProductByIdAndVersion(id, 1L));
+        assertEquals(1, productRepository.deleteProductByIdAndVersion(id, 2L));
+        assertEquals(0, productRepository.deleteProductById(id));
+        assertEquals(0, productRepository.updateDetails(id, "Gone", null, 0.0, null));
+    }
+
+    @Test
+    public void testUpdateDetailsReturningVersion() {
+        Product product = new Product();
+        product.setName("Test Product");
+        product.setPrice(100.0);
+        Long id = productRepository.saveAndFlush(product).getId();
+
+        assertEquals(1L, productRepository.updateDetailsReturningVersion(id, "Checked Update", null, 1.0, 0L));
+        assertNull(productRepository.updateDetailsReturningVersion(id, "Lost Update", null, 2.0, 0L));
+        // unconditional: read back, not guessed
+        assertEquals(2L, productRepository.updateDetailsReturningVersion(id, "Unchecked Update", null, 3.0, null));
+        assertEquals(3L, productRepository.updateDetailsReturningVersion(id, "Unchecked Again", null, 4.0, null));
+
+        productRepository.deleteProductById(id);
+        assertNull(productRepository.updateDetailsReturningVersion(id, "Gone", null, 0.0, null));
+    }
+
+    @Test
+    public void testPatchProduct() {
+        Product product = new Product();
+        product.setName("Test Product");
+        product.setDescription("Test Description");
+        product.setPrice(100.0);
+        Long id = productRepository.saveAndFlush(product).getId();
+
+        assertEquals(1, productRepository.patchProduct(id, Map.of("price", 120.0), 0L));
+        assertEquals(0, productRepository.patchProduct(id, Map.of("price", 130.0), 0L));
+        Map<String, Object> clearDescription = new HashMap<>();
+        clearDescription.put("description", null);
+        assertEquals(1, productRepository.patchProduct(id, clearDescription, null));
+
+        Product patched = productRepository.findById(id).get();
+        assertEquals("Test Product", patched.getName());
+        assertNull(patched.getDescription());
+        assertEquals(120.0, patched.getPrice());
+        assertEquals(2L, patched.getVersion());
+    }
+
+    @Test
+    public void testSearchProducts() {
+        String[][] rows = {{"Kettle", "Steel kettle"}, {"Kettle_2", "Glass KETTLE"}, {"Keyboard", "Wireless"}, {"Mug", "Ceramic"}};
+        for (int i = 0; i < rows.length; i++) {
+            Product product = new Product();
+            product.setName(rows[i][0]);
+            product.setDescription(rows[i][1]);
+            product.setPrice(10.0 * (i + 1));
+            productRepository.save(product);
+        }
+
+        List<ProductSummary> byPrefix = productRepository.searchProducts("Ke", null, null, null, Sort.by(Sort.Direction.DESC, "price"), 10);
+        assertEquals(List.of("Keyboard", "Kettle_2", "Kettle"), byPrefix.stream().map(ProductSummary::getName).toList());
+
+        // LIKE wildcards in the input are matched literally
+        assertEquals(1, productRepository.searchProducts("Kettle_", null, null, null, Sort.by("id"), 10).size());
+
+        List<ProductSummary> byKeywordAndPrice = productRepository.searchProducts(null, "kettle", 15.0, 40.0, Sort.by("id"), 10);
+        assertEquals(1, byKeywordAndPrice.size());
+        assertEquals("Kettle_2", byKeywordAndPrice.get(0).getName());
+        assertEquals(20.0, byKeywordAndPrice.get(0).getPrice());
+
+        assertEquals(2, productRepository.searchProducts(null, null, null, null, Sort.by("id"), 2).size());
+    }
 }
@@ -0,0 +1,38 @@
+package com.example.simpleWebApp;
+
+import com.example.simpleWebApp.config.ProductRuntimeHints;
+import com.example.simpleWebApp.enums.ErrorCode;
+import com.example.simpleWebApp.model.GenericResponse;
+import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.model.ProductChange;
+import com.example.simpleWebApp.model.ProductPrice;
+import com.example.simpleWebApp.model.ProductSummary;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProductRuntimeHintsTest {
+
+    @Test
+    public void testHintsCoverJacksonHibernateAndResources() throws Exception {
+        RuntimeHints hints = new RuntimeHints();
+        new ProductRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(Product.class, "getName").test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(Product.class, "setPrice").test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(GenericResponse.class, "getErrorCode").test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(ErrorCode.class).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection()
+                .onConstructor(ProductSummary.class.getConstructor(Long.class, String.class, double.class)).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection()
+                .onConstructor(ProductPrice.class.getConstructor(Long.class, double.class)).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(ProductPrice.class, "getPrice").test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(ProductChange.class, "getOffset").test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(ProductChange.class, "getProduct").test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(org.h2.Driver.class).test(hints));
+        assertTrue(RuntimeHintsPredicates.resource().forResource("application.conf").test(hints));
+        assertTrue(RuntimeHintsPredicates.resource().forResource("db/migration/V1__create_product.sql").test(hints));
+    }
+}
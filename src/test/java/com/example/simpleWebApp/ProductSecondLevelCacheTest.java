@@ -0,0 +1,106 @@
+package com.example.simpleWebApp;
+
+import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.repository.ProductRepository;
+import com.example.simpleWebApp.service.ProductService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Every repository call below runs in its own transaction and session, so nothing is served by the first-level cache
+@SpringBootTest
+public class ProductSecondLevelCacheTest {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    public void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    public void testRepeatFindByIdIssuesNoSql() {
+        Long id = save("L2 Product", 10.0).getId();
+        productRepository.findById(id);
+        statistics.clear();
+
+        Product product = productRepository.findById(id).get();
+
+        assertEquals("L2 Product", product.getName());
+        assertEquals(0, statistics.getPrepareStatementCount());
+        assertEquals(1, statistics.getSecondLevelCacheHitCount());
+    }
+
+    @Test
+    public void testUpdateAndDeleteAreNeverServedStale() {
+        Long id = save("Before", 10.0).getId();
+        productRepository.findById(id);
+
+        Product details = new Product();
+        details.setName("After");
+        details.setPrice(20.0);
+        productService.updateProduct(id, details);
+
+        Product updated = productRepository.findById(id).get();
+        assertEquals("After", updated.getName());
+        assertEquals(20.0, updated.getPrice());
+
+        productService.deleteProduct(id);
+
+        assertTrue(productRepository.findById(id).isEmpty());
+    }
+
+    @Test
+    public void testRepeatQueryIsServedFromQueryCache() {
+        Long id = save("Query Cached", 10.0).getId();
+        productRepository.findByIdGreaterThanOrderByIdAsc(id - 1, Limit.of(10));
+        statistics.clear();
+
+        productRepository.findByIdGreaterThanOrderByIdAsc(id - 1, Limit.of(10));
+
+        assertEquals(0, statistics.getPrepareStatementCount());
+        assertEquals(1, statistics.getQueryCacheHitCount());
+
+        // any write to the table invalidates the cached result
+        save("Query Cached 2", 20.0);
+        statistics.clear();
+        productRepository.findByIdGreaterThanOrderByIdAsc(id - 1, Limit.of(10));
+        assertEquals(1, statistics.getQueryCacheMissCount());
+    }
+
+    // The whole table is never query-cached: a hit would fetch every row the entity region had evicted one by one
+    @Test
+    public void testFindAllSkipsQueryCache() {
+        save("Not Query Cached", 10.0);
+        productRepository.findAll();
+        statistics.clear();
+
+        productRepository.findAll();
+
+        assertEquals(0, statistics.getQueryCacheHitCount());
+        assertEquals(0, statistics.getQueryCachePutCount());
+    }
+
+    private Product save(String name, double price) {
+        Product product = new Product();
+        product.setName(name);
+        product.setPrice(price);
+        return productRepository.save(product);
+    }
+}
@@ -1,19 +1,38 @@
 package com.example.simpleWebApp;
 
+import com.example.simpleWebApp.cache.ProductCache;
+import com.example.simpleWebApp.changes.ProductChangeFeed;
+import com.example.simpleWebApp.enums.ChangeType;
 import com.example.simpleWebApp.model.GenericResponse;
 import com.example.simpleWebApp.enums.ErrorCode;
+import com.example.simpleWebApp.metrics.ErrorMetrics;
 import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.model.ProductPage;
+import com.example.simpleWebApp.model.ProductPrice;
+import com.example.simpleWebApp.model.ProductSummary;
 import com.example.simpleWebApp.repository.ProductRepository;
 import com.example.simpleWebApp.service.ProductService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -23,12 +42,28 @@ public class ProductServiceTest {
     @Mock
     private ProductRepository productRepository;
 
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private ProductChangeFeed productChangeFeed;
+
+    @Spy
+    private ProductCache productCache = new ProductCache(100, Duration.ofMinutes(1), Duration.ofSeconds(30));
+
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private ErrorMetrics errorMetrics = new ErrorMetrics(meterRegistry);
+
     @InjectMocks
     private ProductService productService;
 
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(productService, "defaultPageSize", 2);
+        ReflectionTestUtils.setField(productService, "maxPageSize", 10);
     }
 
     @Test
@@ -47,6 +82,24 @@ public class ProductServiceTest {
         assertEquals("Test Product", response.getData().getName());
         assertNull(response.getErrorMessage());
         verify(productRepository, times(1)).save(product);
+        verify(productChangeFeed).publish(ChangeType.CREATED, 1L, product);
+    }
+
+    // the row is committed before the feed hears of it, a failing feed must not turn that into an error to retry
+    @Test
+    public void testCreateSucceedsWhenPublishingFails() {
+        Product product = new Product();
+        product.setId(1L);
+        product.setName("Test Product");
+
+        when(productRepository.save(any(Product.class))).thenReturn(product);
+        doThrow(new IllegalStateException("feed down")).when(productChangeFeed).publish(ChangeType.CREATED, 1L, product);
+
+        GenericResponse<Product> response = productService.createProduct(product);
+
+        assertNull(response.getErrorCode());
+        assertEquals(1L, response.getData().getId());
+        verify(productCache).invalidate(1L);
     }
 
     @Test
@@ -71,6 +124,104 @@ public class ProductServiceTest {
         verify(productRepository, times(1)).findAll();
     }
 
+    @Test
+    public void testGetProductsPage() {
+        Product product1 = new Product();
+        product1.setId(1L);
+        Product product2 = new Product();
+        product2.setId(2L);
+        Product product3 = new Product();
+        product3.setId(3L);
+
+        when(productRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(3)))
+                .thenReturn(new ArrayList<>(Arrays.asList(product1, product2, product3)));
+
+        GenericResponse<ProductPage> response = productService.getProductsPage(null, null);
+
+        assertNull(response.getErrorMessage());
+        assertEquals(2, response.getData().getItems().size());
+        assertEquals(2L, response.getData().getItems().get(1).getId());
+        assertNotNull(response.getData().getNext());
+
+        when(productRepository.findByIdGreaterThanOrderByIdAsc(2L, Limit.of(3)))
+                .thenReturn(new ArrayList<>(List.of(product3)));
+
+        GenericResponse<ProductPage> nextPage = productService.getProductsPage(response.getData().getNext(), null);
+
+        assertEquals(1, nextPage.getData().getItems().size());
+        assertEquals(3L, nextPage.getData().getItems().get(0).getId());
+        assertNull(nextPage.getData().getNext());
+    }
+
+    @Test
+    public void testGetProductsPage_invalidCursor() {
+        GenericResponse<ProductPage> response = productService.getProductsPage("not-a-cursor!", 2);
+
+        assertNull(response.getData());
+        assertEquals(ErrorCode.BAD_REQUEST, response.getErrorCode());
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    public void testGetProductsPage_invalidSize() {
+        GenericResponse<ProductPage> response = productService.getProductsPage(null, 11);
+
+        assertNull(response.getData());
+        assertEquals(ErrorCode.BAD_REQUEST, response.getErrorCode());
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    public void testStreamAllProducts() {
+        Product product1 = new Product();
+        product1.setId(1L);
+        Product product2 = new Product();
+        product2.setId(2L);
+
+        when(productRepository.streamAllByOrderByIdAsc()).thenReturn(Stream.of(product1, product2));
+
+        List<Product> received = new ArrayList<>();
+        productService.streamAllProducts(received::add);
+
+        assertEquals(Arrays.asList(product1, product2), received);
+        verify(entityManager, times(1)).detach(product1);
+        verify(entityManager, times(1)).detach(product2);
+    }
+
+    @Test
+    public void testSearchProducts() {
+        List<ProductSummary> summaries = List.of(new ProductSummary(1L, "Kettle", 20.0));
+        Sort order = Sort.by(Sort.Direction.DESC, "price").and(Sort.by("id"));
+        when(productRepository.searchProducts("Ke", null, 10.0, 30.0, order, 2)).thenReturn(summaries);
+
+        GenericResponse<List<ProductSummary>> response = productService.searchProducts("Ke", " ", 10.0, 30.0, "price,desc", null);
+
+        assertEquals(summaries, response.getData());
+        verify(productRepository, times(1)).searchProducts("Ke", null, 10.0, 30.0, order, 2);
+    }
+
+    @Test
+    public void testSearchProductsValidation() {
+        assertEquals(ErrorCode.BAD_REQUEST, productService.searchProducts(null, null, 30.0, 10.0, null, null).getErrorCode());
+        assertEquals(ErrorCode.BAD_REQUEST, productService.searchProducts(null, null, null, null, "description", null).getErrorCode());
+        assertEquals(ErrorCode.BAD_REQUEST, productService.searchProducts(null, null, null, null, "price,sideways", null).getErrorCode());
+        assertEquals(ErrorCode.BAD_REQUEST, productService.searchProducts(null, null, null, null, null, 11).getErrorCode());
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    public void testGetPricesWithoutIndexQueriesDatabase() {
+        List<ProductPrice> prices = List.of(new ProductPrice(1L, 20.0));
+        when(productRepository.findPrices(10.0, Double.MAX_VALUE, Limit.of(2))).thenReturn(prices);
+
+        GenericResponse<List<ProductPrice>> response = productService.getPrices(10.0, null, null);
+
+        assertEquals(prices, response.getData());
+        assertEquals(ErrorCode.BAD_REQUEST, productService.getPrices(30.0, 10.0, null).getErrorCode());
+        assertEquals(ErrorCode.BAD_REQUEST, productService.getPrices(null, null, 11).getErrorCode());
+        verify(productRepository, times(1)).findPrices(anyDouble(), anyDouble(), any());
+    }
+
     @Test
     public void testGetProductById() {
         Product product = new Product();
@@ -87,6 +238,118 @@ public class ProductServiceTest {
         verify(productRepository, times(1)).findById(1L);
     }
 
+    @Test
+    public void testGetProductByIdIsCached() {
+        Product product = new Product();
+        product.setId(1L);
+        product.setName("Test Product");
+
+        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
+
+        productService.getProductById(1L);
+        GenericResponse<Product> response = productService.getProductById(1L);
+
+        assertEquals("Test Product", response.getData().getName());
+        assertEquals(1, productCache.stats().hitCount());
+        verify(productRepository, times(1)).findById(1L);
+    }
+
+    @Test
+    public void testConcurrentGetProductByIdRunsOneQuery() throws Exception {
+        Product product = new Product();
+        product.setId(1L);
+        product.setName("Viral Product");
+        CountDownLatch release = new CountDownLatch(1);
+        when(productRepository.findById(1L)).thenAnswer(invocation -> {
+            SingleFlightTest.await(release);
+            return Optional.of(product);
+        });
+
+        List<Object> responses = SingleFlightTest.burst(() -> productService.getProductById(1L), release);
+
+        verify(productRepository, times(1)).findById(1L);
+        responses.forEach(response -> assertSame(product, ((GenericResponse<?>) response).getData()));
+    }
+
+    // A database outage under a burst is one timeout shared by every caller, not one per caller in turn
+    @Test
+    public void testConcurrentGetProductByIdShareTheFailure() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(productRepository.findById(1L)).thenAnswer(invocation -> {
+            SingleFlightTest.await(release);
+            throw new IllegalStateException("database down");
+        });
+
+        List<Object> responses = SingleFlightTest.burst(() -> productService.getProductById(1L), release);
+
+        verify(productRepository, times(1)).findById(1L);
+        assertEquals(SingleFlightTest.CALLERS, responses.size());
+        responses.forEach(response -> assertEquals(ErrorCode.INTERNAL_SERVER_ERROR, ((GenericResponse<?>) response).getErrorCode()));
+        // nothing was cached, the next read tries again
+        doReturn(Optional.empty()).when(productRepository).findById(1L);
+        assertEquals(ErrorCode.PRODUCT_NOT_FOUND, productService.getProductById(1L).getErrorCode());
+    }
+
+    @Test
+    public void testConcurrentGetAllProductsRunsOneQuery() throws Exception {
+        List<Product> products = List.of(new Product(), new Product());
+        CountDownLatch release = new CountDownLatch(1);
+        when(productRepository.findAll()).thenAnswer(invocation -> {
+            SingleFlightTest.await(release);
+            return products;
+        });
+
+        List<Object> responses = SingleFlightTest.burst(() -> productService.getAllProducts(), release);
+
+        verify(productRepository, times(1)).findAll();
+        responses.forEach(response -> assertSame(products, ((GenericResponse<?>) response).getData()));
+
+        // the next read after the burst is a new query
+        productService.getAllProducts();
+        verify(productRepository, times(2)).findAll();
+    }
+
+    @Test
+    public void testConcurrentGetAllProductsShareTheFailure() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(productRepository.findAll()).thenAnswer(invocation -> {
+            SingleFlightTest.await(release);
+            throw new IllegalStateException("database down");
+        });
+
+        List<Object> responses = SingleFlightTest.burst(() -> productService.getAllProducts(), release);
+
+        verify(productRepository, times(1)).findAll();
+        responses.forEach(response -> assertEquals(ErrorCode.INTERNAL_SERVER_ERROR, ((GenericResponse<?>) response).getErrorCode()));
+    }
+
+    @Test
+    public void testListReadAfterWriteDoesNotJoinOlderQuery() {
+        when(productRepository.findAll()).thenReturn(List.of());
+        productService.getAllProducts();
+        productCache.markChanged();
+        productService.getAllProducts();
+        verify(productRepository, times(2)).findAll();
+    }
+
+    @Test
+    public void testDeleteProductInvalidatesCache() {
+        Product product = new Product();
+        product.setId(1L);
+
+        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
+        productService.getProductById(1L);
+
+        when(productRepository.deleteProductById(1L)).thenReturn(1);
+        productService.deleteProduct(1L);
+        when(productRepository.findById(1L)).thenReturn(Optional.empty());
+
+        GenericResponse<Product> response = productService.getProductById(1L);
+
+        assertEquals(ErrorCode.PRODUCT_NOT_FOUND, response.getErrorCode());
+        verify(productCache, times(1)).invalidate(1L);
+    }
+
     @Test
     public void testGetProductByIdNotFound() {
         when(productRepository.findById(1L)).thenReturn(Optional.empty());
@@ -101,53 +364,168 @@ public class ProductServiceTest {
 
     @Test
     public void testUpdateProduct() {
-        Product existingProduct = new Product();
-        existingProduct.setId(1L);
-        existingProduct.setName("Old Product");
-
         Product updatedProductDetails = new Product();
         updatedProductDetails.setName("Updated Product");
         updatedProductDetails.setDescription("Updated Description");
         updatedProductDetails.setPrice(200.0);
 
-        when(productRepository.findById(1L)).thenReturn(Optional.of(existingProduct));
-        when(productRepository.save(any(Product.class))).thenReturn(existingProduct);
+        when(productRepository.updateDetailsReturningVersion(1L, "Updated Product", "Updated Description", 200.0, null)).thenReturn(5L);
 
         GenericResponse<Product> response = productService.updateProduct(1L, updatedProductDetails);
 
         assertNotNull(response.getData());
+        assertEquals(1L, response.getData().getId());
         assertEquals("Updated Product", response.getData().getName());
+        assertEquals("Updated Description", response.getData().getDescription());
         assertEquals(200.0, response.getData().getPrice());
+        // no version from the client, the response still carries the one the row has now
+        assertEquals(5L, response.getData().getVersion());
         assertNull(response.getErrorMessage());
-        verify(productRepository, times(1)).findById(1L);
-        verify(productRepository, times(1)).save(existingProduct);
+        verify(productRepository, never()).findById(anyLong());
+        verify(productCache, times(1)).invalidate(1L);
     }
 
     @Test
-    public void testDeleteProduct() {
+    public void testUpdateProductWithVersion() {
+        Product updatedProductDetails = new Product();
+        updatedProductDetails.setName("Updated Product");
+        updatedProductDetails.setVersion(3L);
+
+        when(productRepository.updateDetailsReturningVersion(1L, "Updated Product", null, 0.0, 3L)).thenReturn(4L);
+
+        GenericResponse<Product> response = productService.updateProduct(1L, updatedProductDetails);
+
+        assertEquals(4L, response.getData().getVersion());
+        verify(productRepository, never()).existsById(anyLong());
+    }
+
+    @Test
+    public void testUpdateProductVersionConflict() {
+        Product updatedProductDetails = new Product();
+        updatedProductDetails.setName("Updated Product");
+        updatedProductDetails.setVersion(3L);
+
+        when(productRepository.updateDetailsReturningVersion(1L, "Updated Product", null, 0.0, 3L)).thenReturn(null);
+        when(productRepository.existsById(1L)).thenReturn(true);
+
+        GenericResponse<Product> response = productService.updateProduct(1L, updatedProductDetails);
+
+        assertNull(response.getData());
+        assertEquals(ErrorCode.PRODUCT_VERSION_CONFLICT, response.getErrorCode());
+        verify(productCache, never()).invalidate(anyLong());
+    }
+
+    @Test
+    public void testUpdateProductNotFound() {
+        Product updatedProductDetails = new Product();
+        updatedProductDetails.setName("Updated Product");
+
+        when(productRepository.updateDetailsReturningVersion(1L, "Updated Product", null, 0.0, null)).thenReturn(null);
+
+        GenericResponse<Product> response = productService.updateProduct(1L, updatedProductDetails);
+
+        assertNull(response.getData());
+        assertEquals(ErrorCode.PRODUCT_NOT_FOUND, response.getErrorCode());
+        verify(productRepository, never()).existsById(anyLong());
+    }
+
+    @Test
+    public void testPatchProductWritesOnlyGivenFields() {
         Product product = new Product();
         product.setId(1L);
+        product.setName("Test Product");
+        product.setDescription("Unchanged");
+        product.setPrice(150.0);
 
+        when(productRepository.patchProduct(1L, Map.of("price", 150.0), null)).thenReturn(1);
         when(productRepository.findById(1L)).thenReturn(Optional.of(product));
-        doNothing().when(productRepository).delete(product);
+
+        GenericResponse<Product> response = productService.patchProduct(1L, Map.of("price", 150));
+
+        assertEquals(150.0, response.getData().getPrice());
+        assertEquals("Unchanged", response.getData().getDescription());
+        verify(productCache, times(1)).invalidate(1L);
+    }
+
+    @Test
+    public void testPatchProductNullClearsField() {
+        Map<String, Object> patch = new HashMap<>();
+        patch.put("description", null);
+        patch.put("version", 2);
+        Map<String, Object> changes = new HashMap<>();
+        changes.put("description", null);
+
+        when(productRepository.patchProduct(1L, changes, 2L)).thenReturn(0);
+        when(productRepository.existsById(1L)).thenReturn(true);
+
+        GenericResponse<Product> response = productService.patchProduct(1L, patch);
+
+        assertEquals(ErrorCode.PRODUCT_VERSION_CONFLICT, response.getErrorCode());
+    }
+
+    @Test
+    public void testPatchProductWithOnlyVersionChecksIt() {
+        Product product = new Product();
+        product.setId(1L);
+        product.setName("Test Product");
+        product.setVersion(3L);
+        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
+
+        assertEquals(ErrorCode.PRODUCT_VERSION_CONFLICT, productService.patchProduct(1L, Map.of("version", 2)).getErrorCode());
+        assertEquals("Test Product", productService.patchProduct(1L, Map.of("version", 3)).getData().getName());
+        verify(productRepository, never()).patchProduct(anyLong(), anyMap(), any());
+    }
+
+    @Test
+    public void testPatchProductValidation() {
+        Map<String, Object> nullPrice = new HashMap<>();
+        nullPrice.put("price", null);
+
+        assertEquals("price must be a number", productService.patchProduct(1L, nullPrice).getErrorMessage());
+        assertEquals("price must be a number", productService.patchProduct(1L, Map.of("price", "cheap")).getErrorMessage());
+        assertEquals("name must be a string or null", productService.patchProduct(1L, Map.of("name", 5)).getErrorMessage());
+        assertEquals("version must be an integer", productService.patchProduct(1L, Map.of("version", 1.5)).getErrorMessage());
+        assertEquals("id cannot be changed", productService.patchProduct(1L, Map.of("id", 2)).getErrorMessage());
+        assertEquals("Unknown field colour", productService.patchProduct(1L, Map.of("colour", "red")).getErrorMessage());
+        assertEquals(ErrorCode.BAD_REQUEST, productService.patchProduct(1L, null).getErrorCode());
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    public void testDeleteProduct() {
+        when(productRepository.deleteProductById(1L)).thenReturn(1);
 
         GenericResponse<Void> response = productService.deleteProduct(1L);
 
         assertNull(response.getErrorMessage());
         assertNull(response.getErrorCode());
-        verify(productRepository, times(1)).findById(1L);
-        verify(productRepository, times(1)).delete(product);
+        verify(productRepository, times(1)).deleteProductById(1L);
+        verify(productRepository, never()).findById(anyLong());
+        verify(productChangeFeed).publish(ChangeType.DELETED, 1L, null);
+    }
+
+    @Test
+    public void testDeleteProductWithStaleVersion() {
+        when(productRepository.deleteProductByIdAndVersion(1L, 2L)).thenReturn(0);
+        when(productRepository.existsById(1L)).thenReturn(true);
+
+        GenericResponse<Void> response = productService.deleteProduct(1L, 2L);
+
+        assertEquals(ErrorCode.PRODUCT_VERSION_CONFLICT, response.getErrorCode());
+        verify(productRepository, never()).deleteProductById(anyLong());
+        verify(productCache, never()).invalidate(anyLong());
+        verifyNoInteractions(productChangeFeed);
     }
 
     @Test
     public void testDeleteProductNotFound() {
-        when(productRepository.findById(1L)).thenReturn(Optional.empty());
+        when(productRepository.deleteProductById(1L)).thenReturn(0);
 
         GenericResponse<Void> response = productService.deleteProduct(1L);
 
         assertNotNull(response.getErrorMessage());
         assertEquals(ErrorCode.PRODUCT_NOT_FOUND, response.getErrorCode());
-        verify(productRepository, times(1)).findById(1L);
+        verify(productRepository, times(1)).deleteProductById(1L);
     }
 
 
@@ -196,24 +574,25 @@ public class ProductServiceTest {
         Product updatedProductDetails = new Product();
         updatedProductDetails.setName("Updated Product");
 
-        when(productRepository.findById(1L)).thenThrow(new RuntimeException("Database error"));
+        when(productRepository.updateDetailsReturningVersion(1L, "Updated Product", null, 0.0, null)).thenThrow(new RuntimeException("Database error"));
 
         GenericResponse<Product> response = productService.updateProduct(1L, updatedProductDetails);
 
         assertNull(response.getData());
         assertNotNull(response.getErrorMessage());
         assertEquals(ErrorCode.PRODUCT_UPDATE_FAILED, response.getErrorCode());
-        verify(productRepository, times(1)).findById(1L);
     }
 
     @Test
     public void testDeleteProduct_exception() {
-        when(productRepository.findById(1L)).thenThrow(new RuntimeException("Database error"));
+        when(productRepository.deleteProductById(1L)).thenThrow(new RuntimeException("Database error"));
 
         GenericResponse<Void> response = productService.deleteProduct(1L);
 
         assertNotNull(response.getErrorMessage());
         assertEquals(ErrorCode.PRODUCT_DELETION_FAILED, response.getErrorCode());
-        verify(productRepository, times(1)).findById(1L);
+        verify(productRepository, times(1)).deleteProductById(1L);
+        assertEquals(1.0, meterRegistry.get("product.errors").tag("code", "PRODUCT_DELETION_FAILED").counter().count());
+        assertEquals(0.0, meterRegistry.get("product.errors").tag("code", "PRODUCT_NOT_FOUND").counter().count());
     }
 }
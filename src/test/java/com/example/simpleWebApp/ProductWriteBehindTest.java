@@ -0,0 +1,197 @@
+package com.example.simpleWebApp;
+
+import com.example.simpleWebApp.enums.ErrorCode;
+import com.example.simpleWebApp.model.GenericResponse;
+import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.service.ProductService;
+import com.example.simpleWebApp.writebehind.ProductJournal;
+import com.example.simpleWebApp.writebehind.ProductWrite;
+import com.example.simpleWebApp.writebehind.ProductWriteBehind;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The flush interval is long enough that only the explicit flush() calls write anything
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:write-behind",
+        "products.write-behind.flush-interval=1h"
+})
+@ActiveProfiles("write-behind")
+public class ProductWriteBehindTest {
+
+    @TempDir
+    static Path dir;
+
+    @DynamicPropertySource
+    static void journalPath(DynamicPropertyRegistry registry) {
+        registry.add("products.write-behind.journal-path", () -> dir.resolve("products.journal").toString());
+    }
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductWriteBehind productWriteBehind;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void testCreateIsReadableBeforeItIsFlushed() {
+        Product created = productService.createProduct(product("Journaled", 10.0)).getData();
+
+        assertNotNull(created.getId());
+        assertEquals(0L, created.getVersion());
+        assertEquals(0, rows(created.getId()));
+        assertEquals("Journaled", productService.getProductById(created.getId()).getData().getName());
+
+        productWriteBehind.flush();
+
+        assertEquals(1, rows(created.getId()));
+    }
+
+    @Test
+    public void testUpdatesToTheSameIdAreCoalesced() {
+        Long id = productService.createProduct(product("Coalesced", 1.0)).getData().getId();
+        productWriteBehind.flush();
+
+        for (int i = 1; i <= 5; i++) {
+            GenericResponse<Product> response = productService.updateProduct(id, product("Coalesced", i * 10.0));
+            assertEquals((long) i, response.getData().getVersion());
+        }
+        assertEquals(1.0, jdbcTemplate.queryForObject("select price from product where id = ?", Double.class, id));
+        assertEquals(50.0, productService.getProductById(id).getData().getPrice());
+
+        productWriteBehind.flush();
+
+        assertEquals(50.0, jdbcTemplate.queryForObject("select price from product where id = ?", Double.class, id));
+        assertEquals(5L, jdbcTemplate.queryForObject("select version from product where id = ?", Long.class, id));
+    }
+
+    @Test
+    public void testUpdateOfUnknownProductIsNotFound() {
+        GenericResponse<Product> response = productService.updateProduct(Long.MAX_VALUE, product("Missing", 1.0));
+
+        assertEquals(ErrorCode.PRODUCT_NOT_FOUND, response.getErrorCode());
+    }
+
+    @Test
+    public void testDeleteAppliesAfterAcceptedWrites() {
+        Long id = productService.createProduct(product("Deleted", 1.0)).getData().getId();
+
+        assertNull(productService.deleteProduct(id).getErrorCode());
+
+        productWriteBehind.flush();
+        assertEquals(0, rows(id));
+    }
+
+    @Test
+    public void testJournalIsReplayedOnStart() throws Exception {
+        productWriteBehind.stop();
+        // what a crash leaves behind: acknowledged writes that never reached the database
+        try (ProductJournal journal = new ProductJournal(dir.resolve("products.journal"), 64 * 1024 * 1024, false)) {
+            journal.replay();
+            journal.append(new ProductWrite(withIdentity(product("Replayed", 1.0), 1_000_000L, 0L), true));
+            journal.append(new ProductWrite(withIdentity(product("Replayed", 2.0), 1_000_000L, 1L), true));
+            // an update of a row that was deleted after it was journaled
+            journal.append(new ProductWrite(withIdentity(product("Deleted", 3.0), 1_000_001L, 4L), false));
+        }
+
+        productWriteBehind.start();
+
+        assertEquals(2.0, jdbcTemplate.queryForObject("select price from product where id = ?", Double.class, 1_000_000L));
+        assertEquals(1L, jdbcTemplate.queryForObject("select version from product where id = ?", Long.class, 1_000_000L));
+        assertEquals(0, rows(1_000_001L));
+    }
+
+    // a delete that reaches the row some other way while an accepted update is still pending
+    @Test
+    public void testUpdateAcceptedBeforeDeleteDoesNotRecreateTheRow() {
+        Long id = productService.createProduct(product("Racing", 1.0)).getData().getId();
+        productWriteBehind.flush();
+
+        assertNull(productService.updateProduct(id, product("Racing", 2.0)).getErrorCode());
+        jdbcTemplate.update("delete from product where id = ?", id);
+        productWriteBehind.flush();
+
+        assertEquals(0, rows(id));
+        assertEquals(ErrorCode.PRODUCT_NOT_FOUND, productService.getProductById(id).getErrorCode());
+    }
+
+    // an update on top of a create nobody flushed yet still inserts the row
+    @Test
+    public void testUpdateOfUnflushedCreateInsertsTheRow() {
+        Long id = productService.createProduct(product("Fresh", 1.0)).getData().getId();
+        productService.updateProduct(id, product("Fresh", 2.0));
+
+        productWriteBehind.flush();
+
+        assertEquals(2.0, jdbcTemplate.queryForObject("select price from product where id = ?", Double.class, id));
+    }
+
+    // A versioned write flushes and then updates the row; an unversioned update of the same id arriving in between
+    // waits for it instead of getting the same version and being dropped by the flush
+    @Test
+    public void testUpdateWaitsForSynchronousWriteOfTheSameId() throws Exception {
+        Long id = productService.createProduct(product("Interleaved", 1.0)).getData().getId();
+        productWriteBehind.flush();
+        CountDownLatch flushed = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<GenericResponse<Product>> versioned = CompletableFuture.supplyAsync(() -> productWriteBehind.synchronous(id, () -> {
+            flushed.countDown();
+            await(release);
+            return productService.updateProduct(id, withIdentity(product("Versioned", 2.0), null, 0L));
+        }));
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        CompletableFuture<GenericResponse<Product>> unversioned = CompletableFuture.supplyAsync(
+                () -> productService.updateProduct(id, product("Unversioned", 3.0)));
+        Thread.sleep(100);
+        assertFalse(unversioned.isDone());
+
+        release.countDown();
+
+        assertEquals(1L, versioned.get(5, TimeUnit.SECONDS).getData().getVersion());
+        assertEquals(2L, unversioned.get(5, TimeUnit.SECONDS).getData().getVersion());
+        productWriteBehind.flush();
+        assertEquals("Unversioned", jdbcTemplate.queryForObject("select name from product where id = ?", String.class, id));
+        assertEquals(2L, jdbcTemplate.queryForObject("select version from product where id = ?", Long.class, id));
+    }
+
+    private int rows(Long id) {
+        return jdbcTemplate.queryForObject("select count(*) from product where id = ?", Integer.class, id);
+    }
+
+    private static Product product(String name, double price) {
+        Product product = new Product();
+        product.setName(name);
+        product.setPrice(price);
+        return product;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Product withIdentity(Product product, Long id, Long version) {
+        product.setId(id);
+        product.setVersion(version);
+        return product;
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.simpleWebApp;
+
+import com.example.simpleWebApp.model.Product;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:reactive",
+        "spring.r2dbc.url=r2dbc:h2:mem:///reactive"})
+@ActiveProfiles("reactive")
+public class ReactiveProductControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Test
+    public void createGetUpdateDeleteTest() {
+        Product product = new Product();
+        product.setName("Reactive Product");
+        product.setDescription("Reactive Description");
+        product.setPrice(100.0);
+
+        Product created = webTestClient.post().uri("/api/products")
+                .bodyValue(product)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(ProductResponse.class)
+                .returnResult().getResponseBody().data;
+        assertNotNull(created.getId());
+
+        webTestClient.get().uri("/api/products/{id}", created.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.data.name").isEqualTo("Reactive Product");
+
+        product.setName("Updated Reactive Product");
+        webTestClient.put().uri("/api/products/{id}", created.getId())
+                .bodyValue(product)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.data.name").isEqualTo("Updated Reactive Product")
+                // sent without a version, answered with the one the update wrote
+                .jsonPath("$.data.version").isEqualTo(1);
+
+        webTestClient.delete().uri("/api/products/{id}", created.getId())
+                .exchange()
+                .expectStatus().isOk();
+
+        webTestClient.get().uri("/api/products/{id}", created.getId())
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody()
+                .jsonPath("$.errorCode").isEqualTo("PRODUCT_NOT_FOUND");
+    }
+
+    @Test
+    public void patchWithVersionTest() {
+        Product product = new Product();
+        product.setName("Patched Product");
+        product.setDescription("Kept");
+        product.setPrice(10.0);
+        Product created = webTestClient.post().uri("/api/products")
+                .bodyValue(product)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(ProductResponse.class)
+                .returnResult().getResponseBody().data;
+
+        webTestClient.patch().uri("/api/products/{id}", created.getId())
+                .contentType(MediaType.valueOf("application/merge-patch+json"))
+                .bodyValue("{\"price\": 12.5, \"version\": 0}")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.data.price").isEqualTo(12.5)
+                .jsonPath("$.data.description").isEqualTo("Kept")
+                .jsonPath("$.data.version").isEqualTo(1);
+
+        webTestClient.patch().uri("/api/products/{id}", created.getId())
+                .contentType(MediaType.valueOf("application/merge-patch+json"))
+                .bodyValue("{\"price\": 15, \"version\": 0}")
+                .exchange()
+                .expectStatus().isEqualTo(409);
+
+        // a version on its own is still checked
+        webTestClient.patch().uri("/api/products/{id}", created.getId())
+                .contentType(MediaType.valueOf("application/merge-patch+json"))
+                .bodyValue("{\"version\": 0}")
+                .exchange()
+                .expectStatus().isEqualTo(409)
+                .expectBody()
+                .jsonPath("$.errorCode").isEqualTo("PRODUCT_VERSION_CONFLICT");
+
+        webTestClient.patch().uri("/api/products/{id}", created.getId())
+                .contentType(MediaType.valueOf("application/merge-patch+json"))
+                .bodyValue("{\"version\": 1}")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.data.version").isEqualTo(1);
+
+        webTestClient.patch().uri("/api/products/{id}", created.getId())
+                .contentType(MediaType.valueOf("application/merge-patch+json"))
+                .bodyValue("{\"price\": null}")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void pageAndStreamTest() {
+        for (int i = 0; i < 3; i++) {
+            Product product = new Product();
+            product.setName("Streamed " + i);
+            webTestClient.post().uri("/api/products").bodyValue(product).exchange().expectStatus().isOk();
+        }
+
+        webTestClient.get().uri("/api/products/page?size=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.data.items.length()").isEqualTo(2)
+                .jsonPath("$.data.next").exists();
+
+        webTestClient.get().uri("/api/products/page?cursor=bad!")
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        Flux<Product> stream = webTestClient.get().uri("/api/products/stream")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Product.class)
+                .getResponseBody();
+
+        // request one row at a time to exercise backpressure end to end
+        StepVerifier.create(stream.filter(product -> product.getName().startsWith("Streamed")), 1)
+                .expectNextMatches(product -> product.getName().equals("Streamed 0"))
+                .thenRequest(2)
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+
+    static class ProductResponse {
+        public Product data;
+    }
+}
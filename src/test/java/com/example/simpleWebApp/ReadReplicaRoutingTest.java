@@ -0,0 +1,132 @@
+package com.example.simpleWebApp;
+
+import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.repository.ProductRepository;
+import com.jayway.jsonpath.JsonPath;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.cookie;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Two unconnected H2 databases, so a row shows which side a read went to
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:rw-primary",
+        "products.datasource.replicas[0].url=jdbc:h2:mem:rw-replica",
+        "products.datasource.replica-lag-tolerance=60s"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("read-replicas")
+public class ReadReplicaRoutingTest {
+
+    private static final String COOKIE = "products-primary-until";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    private final JdbcTemplate replica = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:rw-replica", "sa", ""));
+
+    @Test
+    public void testReadOnlyRepositoryCallsGoToReplica() {
+        Product product = new Product();
+        product.setName("Primary Only");
+        product.setPrice(10.0);
+        Long id = productRepository.save(product).getId();
+
+        assertTrue(productRepository.findById(id).isEmpty());
+
+        replica.update("insert into product (id, name, price, version) values (?, 'Replicated', 10.0, 0)", id);
+        assertEquals("Replicated", productRepository.findById(id).get().getName());
+    }
+
+    @Test
+    public void testWriterReadsItsOwnWrites() throws Exception {
+        MvcResult created = mockMvc.perform(post("/api/products")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Sticky Product\",\"price\":5.0}"))
+                .andExpect(status().isOk())
+                .andExpect(cookie().exists(COOKIE))
+                .andExpect(cookie().maxAge(COOKIE, 60))
+                .andReturn();
+        Cookie sticky = created.getResponse().getCookie(COOKIE);
+
+        mockMvc.perform(get("/api/products/search").param("name", "Sticky").cookie(sticky))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.length()").value(1));
+
+        // without the cookie the read goes to the replica, which never saw the insert
+        mockMvc.perform(get("/api/products/search").param("name", "Sticky"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.length()").value(0));
+
+        // an expired window is ignored
+        mockMvc.perform(get("/api/products/search").param("name", "Sticky").cookie(new Cookie(COOKIE, "1")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.length()").value(0));
+    }
+
+    // An unpinned read may put the lagging replica's row in the shared by-id cache, the writer must not be served it
+    @Test
+    public void testWriterReadsItsOwnWritesById() throws Exception {
+        MvcResult created = mockMvc.perform(post("/api/products")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Sticky By Id\",\"price\":5.0}"))
+                .andExpect(status().isOk())
+                .andReturn();
+        Cookie sticky = created.getResponse().getCookie(COOKIE);
+        long id = ((Number) JsonPath.read(created.getResponse().getContentAsString(), "$.data.id")).longValue();
+        replica.update("insert into product (id, name, price, version) values (?, 'Lagging', 5.0, 0)", id);
+
+        mockMvc.perform(put("/api/products/" + id).cookie(sticky)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Sticky Renamed\",\"price\":6.0}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/products/" + id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.name").value("Lagging"));
+
+        mockMvc.perform(get("/api/products/" + id).cookie(sticky))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.name").value("Sticky Renamed"));
+    }
+
+    // A list read from the replica gets no tag: it would carry the version of a write the replica has not seen yet
+    @Test
+    public void testOnlyPrimaryListReadsAreTagged() throws Exception {
+        MvcResult created = mockMvc.perform(post("/api/products")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{"name":"Tagged Product","price":5.0}"))
+                .andExpect(status().isOk())
+                .andReturn();
+        Cookie sticky = created.getResponse().getCookie(COOKIE);
+
+        mockMvc.perform(get("/api/products"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("ETag"));
+        mockMvc.perform(get("/api/products/page").header("If-None-Match", "*"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("ETag"));
+
+        mockMvc.perform(get("/api/products").cookie(sticky))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"));
+    }
+}
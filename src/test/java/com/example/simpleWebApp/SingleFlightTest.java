@@ -0,0 +1,110 @@
+package com.example.simpleWebApp;
+
+import com.example.simpleWebApp.cache.SingleFlight;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    static final int CALLERS = 64;
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    @Test
+    public void burstRunsOneCallTest() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Object> results = burst(() -> singleFlight.execute("key", () -> {
+            calls.incrementAndGet();
+            await(release);
+            return "value";
+        }), release);
+
+        assertEquals(1, calls.get());
+        assertEquals(CALLERS, results.size());
+        results.forEach(result -> assertEquals("value", result));
+        assertEquals(0, singleFlight.inFlight());
+
+        // nothing is remembered, the next call runs again
+        assertEquals("again", singleFlight.execute("key", () -> "again"));
+    }
+
+    @Test
+    public void burstSharesTheExceptionTest() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("database down");
+
+        List<Object> results = burst(() -> {
+            try {
+                return singleFlight.execute("key", () -> {
+                    calls.incrementAndGet();
+                    await(release);
+                    throw failure;
+                });
+            } catch (IllegalStateException e) {
+                return e;
+            }
+        }, release);
+
+        assertEquals(1, calls.get());
+        // every waiter sees the caller's exception itself, not a CompletionException around it
+        results.forEach(result -> assertSame(failure, result));
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    public void differentKeysDoNotWaitForEachOtherTest() {
+        AtomicInteger calls = new AtomicInteger();
+        String outer = singleFlight.execute("a", () -> {
+            calls.incrementAndGet();
+            return singleFlight.execute("b", () -> {
+                calls.incrementAndGet();
+                return "b";
+            }) + "a";
+        });
+        assertEquals("ba", outer);
+        assertEquals(2, calls.get());
+    }
+
+    // Starts every caller, lets the call finish only once all the others have joined it, and collects the results.
+    // The caller running the call is parked on release; the others count as joined once they are parked in
+    // CompletableFuture.join, whose blocker is a ForkJoinTask, not merely somewhere on their way to it.
+    static List<Object> burst(Supplier<Object> call, CountDownLatch release) throws InterruptedException {
+        Queue<Object> results = new ConcurrentLinkedQueue<>();
+        List<Thread> threads = new ArrayList<>(CALLERS);
+        for (int i = 0; i < CALLERS; i++) {
+            threads.add(Thread.ofPlatform().start(() -> results.add(call.get())));
+        }
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (threads.stream().filter(thread -> LockSupport.getBlocker(thread) instanceof ForkJoinTask).count() < CALLERS - 1) {
+            assertTrue(System.currentTimeMillis() < deadline, "callers never all joined");
+            Thread.sleep(5);
+        }
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join(10_000);
+        }
+        return new ArrayList<>(results);
+    }
+
+    static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.simpleWebApp;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+// Time from launching the application to the first 200 from /api/products and its resident memory at that point,
+// median of RUNS starts per setup. "before" starts the main class from the Maven classpath with devtools on it,
+// the way spring-boot:run does; the jar setups need the cds profile's target/app, native needs target/simpleWebApp.
+// Run with: mvn -Pcds -DskipTests package [&& mvn -Pnative native:compile] && mvn test -Pload-test -Dtest=StartupTimeLoadTest
+@Tag("load")
+public class StartupTimeLoadTest {
+
+    private static final int RUNS = 5;
+    private static final Path APP = Path.of("target", "app");
+    private static final Path CDS_ARCHIVE = APP.resolve("application.jsa");
+    private static final Path NATIVE_EXECUTABLE = Path.of("target", "simpleWebApp");
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(200)).build();
+
+    @Test
+    public void compareTimeToFirstRequest() throws Exception {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Map<String, String[]> setups = new LinkedHashMap<>();
+        setups.put("before", new String[]{java, "-cp", System.getProperty("java.class.path"), SimpleWebAppApplication.class.getName()});
+        if (Files.exists(CDS_ARCHIVE)) {
+            String jar;
+            try (var files = Files.list(APP)) {
+                jar = files.filter(file -> file.toString().endsWith(".jar")).findFirst().orElseThrow().toString();
+            }
+            setups.put("jar", new String[]{java, "-jar", jar});
+            setups.put("aot", new String[]{java, "-Dspring.aot.enabled=true", "-jar", jar});
+            setups.put("aot+cds", new String[]{java, "-XX:SharedArchiveFile=" + CDS_ARCHIVE, "-Dspring.aot.enabled=true", "-jar", jar});
+            setups.put("aot+cds+lazy", new String[]{java, "-XX:SharedArchiveFile=" + CDS_ARCHIVE, "-Dspring.aot.enabled=true",
+                    "-Dspring.profiles.active=fast-start", "-jar", jar});
+        }
+        if (Files.isExecutable(NATIVE_EXECUTABLE)) {
+            setups.put("native", new String[]{NATIVE_EXECUTABLE.toString()});
+        }
+
+        System.out.printf("%-14s %12s %12s %12s%n", "setup", "median ms", "min ms", "rss MB");
+        for (Map.Entry<String, String[]> setup : setups.entrySet()) {
+            long[] times = new long[RUNS];
+            long[] rss = new long[RUNS];
+            for (int i = 0; i < RUNS; i++) {
+                Start start = firstRequest(setup.getValue());
+                times[i] = start.millis;
+                rss[i] = start.rssKb;
+            }
+            Arrays.sort(times);
+            Arrays.sort(rss);
+            System.out.printf("%-14s %12d %12d %12d%n", setup.getKey(), times[RUNS / 2], times[0], rss[RUNS / 2] / 1024);
+        }
+    }
+
+    private Start firstRequest(String... command) throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        List<String> arguments = new ArrayList<>(List.of(command));
+        arguments.add("--server.port=" + port);
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/products")).build();
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(arguments)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            while (System.nanoTime() - start < Duration.ofMinutes(2).toNanos()) {
+                if (!process.isAlive()) {
+                    fail(String.join(" ", command) + " exited with " + process.exitValue());
+                }
+                try {
+                    if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        return new Start((System.nanoTime() - start) / 1_000_000, rssKb(process));
+                    }
+                } catch (IOException e) {
+                    // not listening yet
+                }
+                Thread.sleep(5);
+            }
+            return fail("No response within two minutes from " + String.join(" ", command));
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    // Linux only, 0 elsewhere
+    private static long rssKb(Process process) throws IOException {
+        Path status = Path.of("/proc", Long.toString(process.pid()), "status");
+        if (!Files.exists(status)) {
+            return 0;
+        }
+        return Files.readAllLines(status).stream()
+                .filter(line -> line.startsWith("VmRSS:"))
+                .mapToLong(line -> Long.parseLong(line.replaceAll("\\D", "")))
+                .findFirst()
+                .orElse(0);
+    }
+
+    private record Start(long millis, long rssKb) {
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.simpleWebApp;
+
+import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.service.ProductBatchService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Starts the app once on platform threads and once with the virtual-threads profile, with the same connection pool
+// and every cache switched off, drives the same mix of by-id reads, page reads and updates at both and prints
+// p50/p99 latency and throughput. Every request waits on JDBC, so the numbers compare the thread models under
+// blocking I/O rather than pool sizes or cache hits.
+// Run with: mvn test -Pload-test -Dtest=VirtualThreadLoadTest
+@Tag("load")
+public class VirtualThreadLoadTest {
+
+    private static final int PRODUCTS = 5_000;
+    private static final int CONCURRENCY = 800;
+    private static final int REQUESTS = 40_000;
+    private static final int WARMUP_REQUESTS = 5_000;
+
+    // command line arguments, so they win over the virtual-threads profile's pool settings as well
+    private static final String[] SAME_FOR_BOTH = {
+            "--spring.datasource.hikari.maximum-pool-size=20",
+            "--spring.datasource.hikari.minimum-idle=20",
+            "--spring.datasource.hikari.connection-timeout=30000",
+            "--products.cache.maximum-size=0",
+            "--spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+            "--spring.jpa.properties.hibernate.cache.use_query_cache=false"
+    };
+
+    @Test
+    public void comparePlatformAndVirtualThreads() throws Exception {
+        Result platform = run(false);
+        Result virtual = run(true);
+
+        System.out.printf("%-10s %12s %10s %10s%n", "mode", "req/s", "p50 ms", "p99 ms");
+        System.out.printf("%-10s %12.0f %10.2f %10.2f%n", "platform", platform.throughput, platform.p50, platform.p99);
+        System.out.printf("%-10s %12.0f %10.2f %10.2f%n", "virtual", virtual.throughput, virtual.p50, virtual.p99);
+    }
+
+    private Result run(boolean virtualThreads) throws Exception {
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(SimpleWebAppApplication.class)
+                .properties("server.port=0", "spring.datasource.url=jdbc:h2:mem:load-" + virtualThreads,
+                        // one client at 800 concurrent requests, this measures the threads and not the shedding
+                        "products.rate-limit.enabled=false", "products.load-shedding.enabled=false");
+        if (virtualThreads) {
+            builder.profiles("virtual-threads");
+        }
+        try (ConfigurableApplicationContext context = builder.run(SAME_FOR_BOTH)) {
+            seed(context.getBean(ProductBatchService.class));
+            int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+            try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                HttpClient client = HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .executor(clients)
+                        .build();
+                drive(client, port, WARMUP_REQUESTS);
+                return drive(client, port, REQUESTS);
+            }
+        }
+    }
+
+    private void seed(ProductBatchService productBatchService) {
+        List<Product> products = new ArrayList<>(PRODUCTS);
+        for (int i = 0; i < PRODUCTS; i++) {
+            Product product = new Product();
+            product.setName("Load Product " + i);
+            product.setDescription("Seeded for the load test");
+            product.setPrice(i);
+            products.add(product);
+        }
+        productBatchService.createProducts(products);
+    }
+
+    private Result drive(HttpClient client, int port, int requests) throws Exception {
+        long[] latencies = new long[requests];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        long start = System.nanoTime();
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>(CONCURRENCY);
+            for (int worker = 0; worker < CONCURRENCY; worker++) {
+                futures.add(workers.submit(() -> {
+                    for (int i = next.getAndIncrement(); i < requests; i = next.getAndIncrement()) {
+                        // a quarter each updates and pages from a moving cursor, half by-id reads, all of them go to H2
+                        long id = 1 + i % PRODUCTS;
+                        HttpRequest request = switch (i % 4) {
+                            case 0 -> HttpRequest.newBuilder(uri(port, "/api/products/" + id))
+                                    .header("Content-Type", "application/json")
+                                    .PUT(HttpRequest.BodyPublishers.ofString("{\"name\":\"Load Product " + id + "\",\"price\":" + i + "}"))
+                                    .build();
+                            case 1 -> HttpRequest.newBuilder(uri(port, "/api/products/page?size=50&cursor="
+                                    + cursor(id))).build();
+                            default -> HttpRequest.newBuilder(uri(port, "/api/products/" + id)).build();
+                        };
+                        long sent = System.nanoTime();
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        latencies[i] = System.nanoTime() - sent;
+                        if (response.statusCode() != 200) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        assertEquals(0, failures.get());
+        Arrays.sort(latencies);
+        return new Result(requests / (elapsed / 1e9),
+                latencies[requests / 2] / 1e6,
+                latencies[(int) (requests * 0.99)] / 1e6);
+    }
+
+    // what /api/products/page hands out as next for a page ending at this id
+    private static String cursor(long id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Long.toString(id).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static URI uri(int port, String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private record Result(double throughput, double p50, double p99) {
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.simpleWebApp;
+
+import com.example.simpleWebApp.service.ProductService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+// Restart-to-ready time of the prod profile on a file database holding 1M products,
+// next to what an in-memory start costs once the catalog has to be loaded again.
+// Run with: mvn test -Pload-test -Dtest=WarmRestartLoadTest
+@Tag("load")
+public class WarmRestartLoadTest {
+
+    private static final int PRODUCTS = 1_000_000;
+    private static final int RESTARTS = 3;
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    public void compareWarmRestartWithReload() {
+        String dbPath = dataDir.resolve("products").toString();
+
+        long start = System.nanoTime();
+        try (ConfigurableApplicationContext context = prod(dbPath).run()) {
+            seed(context);
+        }
+        double firstStart = (System.nanoTime() - start) / 1e6;
+
+        double[] restarts = new double[RESTARTS];
+        for (int i = 0; i < RESTARTS; i++) {
+            start = System.nanoTime();
+            try (ConfigurableApplicationContext context = prod(dbPath).run()) {
+                restarts[i] = (System.nanoTime() - start) / 1e6;
+                assertEquals(PRODUCTS, context.getBean(JdbcTemplate.class).queryForObject("select count(*) from product", Integer.class));
+                assertNotNull(context.getBean(ProductService.class).getProductById(PRODUCTS / 2L).getData());
+            }
+        }
+
+        start = System.nanoTime();
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(SimpleWebAppApplication.class)
+                .properties("server.port=0", "spring.datasource.url=jdbc:h2:mem:reload")
+                .run()) {
+            seed(context);
+        }
+        double inMemoryReload = (System.nanoTime() - start) / 1e6;
+
+        System.out.printf("%-28s %10.0f ms%n", "file db, first start + seed", firstStart);
+        for (int i = 0; i < RESTARTS; i++) {
+            System.out.printf("%-28s %10.0f ms%n", "file db, warm restart " + (i + 1), restarts[i]);
+        }
+        System.out.printf("%-28s %10.0f ms%n", "in-memory start + reload", inMemoryReload);
+    }
+
+    private SpringApplicationBuilder prod(String dbPath) {
+        return new SpringApplicationBuilder(SimpleWebAppApplication.class)
+                .profiles("prod")
+                .properties("server.port=0", "products.db.path=" + dbPath);
+    }
+
+    // Same statement for both databases, so the comparison is about startup and not about the loader
+    private void seed(ConfigurableApplicationContext context) {
+        context.getBean(JdbcTemplate.class).update(
+                "insert into product (id, name, description, price, version) " +
+                        "select x, 'Product ' || x, 'Description of product ' || x, mod(x * 7919, 100000) / 100.0, 0 " +
+                        "from system_range(1, ?)", PRODUCTS);
+    }
+}
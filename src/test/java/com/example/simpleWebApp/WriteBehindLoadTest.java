@@ -0,0 +1,128 @@
+package com.example.simpleWebApp;
+
+import com.example.simpleWebApp.model.Product;
+import com.example.simpleWebApp.service.ProductService;
+import com.example.simpleWebApp.writebehind.ProductWriteBehind;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// createProduct/updateProduct on the prod profile's file database, synchronous against write-behind.
+// The writes are a price feed: a few creates, then many updates concentrated on a hot set of ids.
+// Run with: mvn test -Pload-test -Dtest=WriteBehindLoadTest
+@Tag("load")
+public class WriteBehindLoadTest {
+
+    private static final int THREADS = 16;
+    private static final int CREATES = 5_000;
+    private static final int UPDATES = 100_000;
+    private static final int WARMUP_UPDATES = 20_000;
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    public void compareSynchronousAndWriteBehind() throws Exception {
+        Result synchronous = run(false);
+        Result writeBehind = run(true);
+
+        System.out.printf("%-14s %-8s %12s %10s %10s%n", "mode", "op", "ops/s", "p50 us", "p99 us");
+        synchronous.print("synchronous");
+        writeBehind.print("write-behind");
+    }
+
+    private Result run(boolean writeBehind) throws Exception {
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(SimpleWebAppApplication.class)
+                .properties("server.port=0",
+                        "products.db.path=" + dataDir.resolve("products-" + writeBehind),
+                        "products.write-behind.journal-path=" + dataDir.resolve("products-" + writeBehind + ".journal"));
+        builder.profiles(writeBehind ? new String[]{"prod", "write-behind"} : new String[]{"prod"});
+        try (ConfigurableApplicationContext context = builder.run()) {
+            ProductService productService = context.getBean(ProductService.class);
+            long[] ids = new long[CREATES];
+            Stats creates = drive(CREATES, i -> {
+                ids[i] = productService.createProduct(product(i, 1.0)).getData().getId();
+            });
+            drive(WARMUP_UPDATES, i -> update(productService, ids, i));
+            Stats updates = drive(UPDATES, i -> update(productService, ids, i));
+
+            if (writeBehind) {
+                context.getBean(ProductWriteBehind.class).flush();
+            }
+            // every acknowledged create has to be in the database either way
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            assertEquals(CREATES, jdbcTemplate.queryForObject("select count(*) from product", Integer.class));
+            return new Result(creates, updates);
+        }
+    }
+
+    private static void update(ProductService productService, long[] ids, int i) {
+        // 80% of the updates go to the first 5% of the ids
+        int index = i % 5 == 0 ? i % ids.length : i % (ids.length / 20);
+        assertNull(productService.updateProduct(ids[index], product(index, i)).getErrorCode());
+    }
+
+    private static Stats drive(int operations, Operation operation) throws Exception {
+        long[] latencies = new long[operations];
+        AtomicInteger next = new AtomicInteger();
+        long start = System.nanoTime();
+        try (ExecutorService workers = Executors.newFixedThreadPool(THREADS)) {
+            List<Future<?>> futures = new ArrayList<>(THREADS);
+            for (int worker = 0; worker < THREADS; worker++) {
+                futures.add(workers.submit(() -> {
+                    for (int i = next.getAndIncrement(); i < operations; i = next.getAndIncrement()) {
+                        long sent = System.nanoTime();
+                        operation.run(i);
+                        latencies[i] = System.nanoTime() - sent;
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        return new Stats(operations / (elapsed / 1e9),
+                latencies[operations / 2] / 1e3,
+                latencies[(int) (operations * 0.99)] / 1e3);
+    }
+
+    private static Product product(int index, double price) {
+        Product product = new Product();
+        product.setName("Feed Product " + index);
+        product.setDescription("Priced by the feed");
+        product.setPrice(price);
+        return product;
+    }
+
+    private interface Operation {
+        void run(int i) throws Exception;
+    }
+
+    private record Stats(double throughput, double p50, double p99) {
+    }
+
+    private record Result(Stats creates, Stats updates) {
+        void print(String mode) {
+            System.out.printf("%-14s %-8s %12.0f %10.1f %10.1f%n", mode, "create", creates.throughput, creates.p50, creates.p99);
+            System.out.printf("%-14s %-8s %12.0f %10.1f %10.1f%n", mode, "update", updates.throughput, updates.p50, updates.p99);
+        }
+    }
+}